@@ -3,56 +3,193 @@ package ru.mail.configen
 import android.content.Context
 import android.util.Log
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.withContext
-import org.json.JSONObject
+import ru.mail.flexsettings.ChangedSettingsWriter
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
 import java.io.File
+import java.io.IOException
+import java.io.InputStreamReader
+import java.util.zip.CRC32
 
 class ConfigurationDelegate {
 
     private val devConfig = "dev_config.json"
-    private val etalonConfig = "etalon_config.json"
+    private val binaryConfig = "config.bin"
 
     suspend fun loadConfig(context: Context): DTOConfiguration {
         return withContext(Dispatchers.IO) {
-            val parser = DTOConfigurationJsonParser(AnalyticsSenderImpl())
-            val file = File(context.filesDir, devConfig)
-            var developerSettings: DTOConfigurationImpl? = null
-            if (file.exists()) {
-                developerSettings = parser.parse(JSONObject(file.readText()))
+            val source = developerSource(context)
+            config?.takeIf { it.source.matches(source) }?.let { return@withContext it.value }
+            val stamp = sourceStamp(context, source)
+            val snapshot = readBinarySnapshot(context, stamp)
+                ?: parseConfig(context, source).also { writeBinarySnapshot(context, it, stamp) }
+            config = Cached(source, snapshot)
+            store.publish(snapshot)
+            snapshot
+        }
+    }
+
+    /*
+    * Developer settings are read and parsed on the IO pool while the etalon is built on the default one,
+    * so the load takes as long as the slower part. Cancelling the caller cancels both.
+    */
+    private suspend fun parseConfig(context: Context, source: Source): DTOConfigurationSnapshot = coroutineScope {
+        val developerSettings = async(Dispatchers.IO) { developerSettings(context, source) }
+        val etalonSnapshot = async(Dispatchers.Default) { etalon }
+        developerSettings.await()
+            ?.mergedWith(etalonSnapshot.await())
+            ?: etalonSnapshot.await()
+    }
+
+    /*
+    * Existence, size and modification time of a known file are trusted without reading it, otherwise the file
+    * is read and its CRC32 computed again. Cached values are matched by existence, size and that checksum,
+    * so rewriting the same settings keeps them while a missing file and an empty one stay apart.
+    */
+    private fun developerSource(context: Context): Source {
+        val file = File(context.filesDir, devConfig)
+        val known = source
+        if (known != null && known.exists == file.exists() && known.length == file.length() &&
+            known.lastModified == file.lastModified()) {
+            return known
+        }
+        return readSource(file).first.also { source = it }
+    }
+
+    /*
+    * The file is read and parsed without holding a lock, concurrent loads of the same settings may both parse
+    * them and store equal results.
+    */
+    private fun developerSettings(context: Context, source: Source): DTOConfigurationSnapshot? {
+        developer?.takeIf { it.source.matches(source) }?.let { return it.value }
+        val (current, bytes) = readSource(File(context.filesDir, devConfig))
+        val settings = bytes?.let {
+            InputStreamReader(ByteArrayInputStream(it), Charsets.UTF_8).use { reader ->
+                DTOConfigurationSnapshot.of(DTOConfigurationJsonParser(AnalyticsSenderImpl()).parse(reader))
             }
-            val etalon = parser.parse(
-                JSONObject(context.resources.assets.open(etalonConfig)
-                    .bufferedReader()
-                    .use {
-                        it.readText()
-                    })
-            )
-            if (developerSettings != null) {
-                developerSettings.merge(etalon)
-                developerSettings
-            } else {
-                etalon
+        }
+        developer = Cached(current, settings)
+        return settings
+    }
+
+    private fun readSource(file: File): Pair<Source, ByteArray?> {
+        val bytes = if (file.exists()) file.readBytes() else null
+        val checksum = CRC32().apply { bytes?.let { update(it) } }.value
+        return Source(bytes != null, bytes?.size?.toLong() ?: 0L, file.lastModified(), checksum) to bytes
+    }
+
+    /*
+    * Identifies the sources of the binary snapshot: the etalon changes only with an app update,
+    * developer settings with their size and checksum, a missing file differs from an empty one.
+    */
+    private fun sourceStamp(context: Context, source: Source): Long {
+        val lastUpdateTime = context.packageManager.getPackageInfo(context.packageName, 0).lastUpdateTime
+        val length = if (source.exists) source.length else -1L
+        return (lastUpdateTime * 31 + source.checksum) * 31 + length
+    }
+
+    /*
+    * A snapshot that cannot be read, truncated or corrupt, is deleted and the configuration is parsed from JSON.
+    */
+    private fun readBinarySnapshot(context: Context, stamp: Long): DTOConfigurationSnapshot? {
+        val file = File(context.filesDir, binaryConfig)
+        if (!file.exists()) {
+            return null
+        }
+        return try {
+            DataInputStream(file.inputStream().buffered()).use {
+                if (it.readLong() == stamp) DTOConfigurationSnapshot.of(DTOConfigurationBinaryCodec.read(it)) else null
             }
+        } catch (e: IOException) {
+            discardBinarySnapshot(file, e)
+        } catch (e: RuntimeException) {
+            discardBinarySnapshot(file, e)
+        }
+    }
+
+    private fun discardBinarySnapshot(file: File, e: Exception): DTOConfigurationSnapshot? {
+        Log.d("Configuration", "Binary snapshot is not usable, falling back to JSON", e)
+        file.delete()
+        return null
+    }
+
+    private fun writeBinarySnapshot(context: Context, snapshot: DTOConfiguration, stamp: Long) {
+        val file = File(context.filesDir, binaryConfig)
+        val tmp = File(context.filesDir, "$binaryConfig.tmp")
+        try {
+            DataOutputStream(tmp.outputStream().buffered()).use {
+                it.writeLong(stamp)
+                DTOConfigurationBinaryCodec.write(snapshot, it)
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete()
+            }
+        } catch (e: IOException) {
+            Log.d("Configuration", "Cannot write binary snapshot", e)
+            tmp.delete()
         }
     }
 
     suspend fun loadDeveloperSettings(context: Context): DTOConfiguration {
         return withContext(Dispatchers.IO) {
-            val file = File(context.filesDir, devConfig)
-            if (file.exists()) {
-                DTOConfigurationJsonParser(AnalyticsSenderImpl()).parse(JSONObject(file.readText()))
-            } else {
-                DTOConfigurationImpl()
-            }
+            developerSettings(context, developerSource(context)) ?: DTOConfigurationImpl()
         }
     }
 
-    suspend fun saveDeveloperSettings(context: Context, config: String) {
+    /*
+    * Only changed settings are streamed to the file, the rest comes from the etalon they are merged with.
+    * The file is replaced at once, a failed write leaves the previous settings and is rethrown.
+    */
+    suspend fun saveDeveloperSettings(context: Context, settings: ChangedSettingsWriter) {
         withContext(Dispatchers.IO) {
-            File(context.filesDir, devConfig).writeText(config)
+            val file = File(context.filesDir, devConfig)
+            val tmp = File(context.filesDir, "$devConfig.tmp")
+            try {
+                tmp.bufferedWriter(Charsets.UTF_8).use { settings.writeTo(it) }
+                if (!tmp.renameTo(file)) {
+                    throw IOException("Cannot replace $file")
+                }
+            } catch (e: IOException) {
+                tmp.delete()
+                throw e
+            }
+            source = null
         }
     }
 
+    companion object {
+        /*
+        * Last loaded configuration, readable from any thread without locking.
+        */
+        val store = DTOConfigurationStore()
+
+        /*
+        * Process-wide results keyed by the developer settings they were built from. The etalon is compiled
+        * into the app, so it is built once per process. Each cache is replaced whole through its volatile field,
+        * so readers need no lock.
+        */
+        private val etalon by lazy { DTOConfigurationSnapshot.of(DTOConfigurationEtalon.create()) }
+
+        @Volatile
+        private var source: Source? = null
+
+        @Volatile
+        private var developer: Cached<DTOConfigurationSnapshot?>? = null
+
+        @Volatile
+        private var config: Cached<DTOConfigurationSnapshot>? = null
+    }
+
+    private class Source(val exists: Boolean, val length: Long, val lastModified: Long, val checksum: Long) {
+        fun matches(other: Source) = exists == other.exists && length == other.length && checksum == other.checksum
+    }
+
+    private class Cached<T>(val source: Source, val value: T)
+
     class AnalyticsSenderImpl : AnalyticsSender {
         override fun sendParsingConfigError(fieldName: String?, reason: String?, actionTaken: String?) {
             Log.d("Parsing", "$fieldName validation error $reason $actionTaken")
@@ -1,33 +1,67 @@
 package ru.mail.configen
 
 import android.os.Bundle
+import android.util.Log
 import android.widget.Toast
 import kotlinx.coroutines.*
+import ru.mail.flexsettings.ChangedSettingsWriter
 import ru.mail.flexsettings.FlexSettingsActivity
+import java.io.IOException
 
-class DeveloperSettingsActivity : FlexSettingsActivity() {
+class DeveloperSettingsActivity : FlexSettingsActivity(), CoroutineScope by MainScope() {
+
+    private var saving: Job? = null
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
-
-        val field = ConfigSettingsDefinition.create()
-        runBlocking {
-            ConfigSettingsMapper.map(
-                field.asStrictObject(),
-                ConfigurationDelegate().loadConfig(this@DeveloperSettingsActivity),
-                ConfigurationDelegate().loadDeveloperSettings(this@DeveloperSettingsActivity)
-            )
+        launch {
+            val fields = try {
+                loadFields()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.d("Configuration", "Cannot load developer settings", e)
+                Toast.makeText(this@DeveloperSettingsActivity, "Settings are not loaded: ${e.message}", Toast.LENGTH_LONG).show()
+                finish()
+                return@launch
+            }
+            showFieldScreen(fields.root)
         }
-        showFieldScreen(field)
     }
 
-    override fun onSaveSettings(settingsJson: String) {
-        GlobalScope.async {
-            ConfigurationDelegate().saveDeveloperSettings(applicationContext, settingsJson)
+    private suspend fun loadFields(): ConfigSettingsDefinition.Fields = coroutineScope {
+        val config = async { ConfigurationDelegate().loadConfig(applicationContext) }
+        val developerSettings = async { ConfigurationDelegate().loadDeveloperSettings(applicationContext) }
+        val fields = ConfigSettingsDefinition.createFields()
+        ConfigSettingsMapper.map(fields, config.await(), developerSettings.await())
+        fields
+    }
+
+    override fun onDestroy() {
+        super.onDestroy()
+        cancel()
+    }
+
+    /*
+    * The activity stays until the settings are written, so the main screen reloads the saved ones. A failed
+    * write is reported and the screen is kept, leaving it again retries.
+    */
+    override fun onSaveSettings(settings: ChangedSettingsWriter) {
+        if (saving?.isActive == true) {
+            return
+        }
+        saving = launch {
+            try {
+                ConfigurationDelegate().saveDeveloperSettings(applicationContext, settings)
+            } catch (e: IOException) {
+                Log.d("Configuration", "Cannot save developer settings", e)
+                Toast.makeText(this@DeveloperSettingsActivity, "Settings are not saved: ${e.message}", Toast.LENGTH_LONG).show()
+                return@launch
+            }
+            Toast.makeText(this@DeveloperSettingsActivity, "Settings saved", Toast.LENGTH_LONG).show()
+            setResult(reqCodeSetSettings)
+            finish()
         }
-        Toast.makeText(this, "Settings saved", Toast.LENGTH_LONG).show()
-        setResult(reqCodeSetSettings)
-        finish()
     }
-}
\ No newline at end of file
+}
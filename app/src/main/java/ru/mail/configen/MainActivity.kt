@@ -10,7 +10,7 @@ import kotlinx.coroutines.*
 
 const val reqCodeSetSettings = 1234
 
-class MainActivity : AppCompatActivity() {
+class MainActivity : AppCompatActivity(), CoroutineScope by MainScope() {
 
 
     @SuppressLint("SetTextI18n")
@@ -18,7 +18,7 @@ class MainActivity : AppCompatActivity() {
         super.onCreate(savedInstanceState)
         setContentView(R.layout.activity_main)
         val configView: TextView = findViewById(R.id.config)
-        GlobalScope.launch(Dispatchers.Main) {
+        launch {
             val config = ConfigurationDelegate().loadConfig(applicationContext)
             configView.text = "received config: \n" +
                     "config.fieldRoot ${config.fieldRoot}\n" +
@@ -35,6 +35,11 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    override fun onDestroy() {
+        super.onDestroy()
+        cancel()
+    }
+
     override fun onActivityResult(requestCode: Int, resultCode: Int, data: Intent?) {
         super.onActivityResult(requestCode, resultCode, data)
         if (requestCode == reqCodeSetSettings) {
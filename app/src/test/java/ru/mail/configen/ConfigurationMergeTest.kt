@@ -0,0 +1,79 @@
+package ru.mail.configen
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class ConfigurationMergeTest {
+
+    @Test
+    fun mergesIntoChildSetFromOutside() {
+        val target = DTOConfigurationImpl()
+        target.setFeature(DTOConfigurationSnapshot.FeatureSnapshot.Builder()
+                .setField1(3)
+                .build())
+
+        target.merge(override(field1 = 5, field2 = "01.01.2020"))
+
+        assertTrue(target.feature is DTOConfigurationImpl.FeatureImpl)
+        assertEquals(3, target.feature.field1)
+        assertTrue(target.feature.field1Set)
+        assertEquals("01.01.2020", target.feature.field2)
+        assertTrue(target.feature.field2Set)
+    }
+
+    @Test
+    fun mergesIntoNestedChildrenSetFromOutside() {
+        val target = DTOConfigurationImpl()
+        target.setFeature(DTOConfigurationSnapshot.FeatureSnapshot.Builder()
+                .setNestedConfig(DTOConfigurationSnapshot.FeatureSnapshot.NestedConfigSnapshot.Builder()
+                        .setNestedField1(11)
+                        .build())
+                .build())
+
+        target.merge(override(nestedField1 = 19, nestedField2 = "custom value"))
+
+        assertEquals(11, target.feature.nestedConfig.nestedField1)
+        assertEquals("custom value", target.feature.nestedConfig.nestedField2)
+        assertTrue(target.feature.nestedConfig.nestedField2Set)
+    }
+
+    @Test
+    fun leavesChildSetFromOutsideUnchanged() {
+        val feature = DTOConfigurationSnapshot.FeatureSnapshot.Builder()
+                .setField1(3)
+                .build()
+        val target = DTOConfigurationImpl()
+        target.setFeature(feature)
+
+        target.merge(override(field2 = "01.01.2020"))
+
+        assertNotSame(feature, target.feature)
+        assertFalse(feature.field2Set)
+        assertNull(feature.field2)
+    }
+
+    @Test
+    fun mergesIntoOwnChildInPlace() {
+        val target = DTOConfigurationImpl()
+        val feature = target.feature
+
+        target.merge(override(field2 = "01.01.2020"))
+
+        assertSame(feature, target.feature)
+        assertEquals("01.01.2020", target.feature.field2)
+    }
+
+    private fun override(field1: Int? = null, field2: String? = null, nestedField1: Int? = null,
+                         nestedField2: String? = null): DTOConfiguration {
+        val nestedConfig = DTOConfigurationImpl.FeatureImpl.NestedConfigImpl()
+        nestedField1?.let { nestedConfig.setNestedField1(it) }
+        nestedField2?.let { nestedConfig.setNestedField2(it) }
+        val feature = DTOConfigurationImpl.FeatureImpl()
+        field1?.let { feature.setField1(it) }
+        field2?.let { feature.setField2(it) }
+        feature.setNestedConfig(nestedConfig)
+        val configuration = DTOConfigurationImpl()
+        configuration.setFeature(feature)
+        return configuration
+    }
+}
@@ -0,0 +1,84 @@
+package benchmark
+
+import ru.mail.condef.dsl.*
+import ru.mail.condef.schema.readDefinition
+import java.io.File
+
+/*
+* Definitions the benchmark module generates parsers for. Each one stresses a different shape of the generated code,
+* "small" is the definition file of the app.
+*/
+fun benchmarkDefinitions(configurationDefinition: File) = linkedMapOf(
+        "small" to readDefinition(configurationDefinition),
+        "wide" to wideDefinition(10, 100),
+        "deep" to deepDefinition(20),
+        "collections" to collectionsDefinition()
+)
+
+/*
+* Scalar fields grouped into sections, each section is parsed by a method of its own.
+*/
+internal fun wideDefinition(sections: Int, fieldsPerSection: Int) = Definition((0 until sections).map { section ->
+    "section_$section" of FreeObjectType() withDefault empty() restrictedBy Definition((0 until fieldsPerSection).map {
+        wideField(section * fieldsPerSection + it)
+    })
+})
+
+private fun wideField(index: Int) = when (index % 6) {
+    0 -> "text_$index" of StringType() withDefault "value"
+    1 -> "number_$index" of IntegerType() withAllowedRange 0..1000 withDefault 0
+    2 -> "flag_$index" of BoolType() withDefault false
+    3 -> "timestamp_$index" of LongType() withDefault 0L
+    4 -> "mode_$index" of StringType() withAllowedValues listOf("alpha", "beta", "gamma") withDefault "alpha"
+    else -> "level_$index" of IntegerType() withAllowedValues listOf(1, 2, 3, 5, 8) withDefault 1
+}
+
+internal fun deepDefinition(depth: Int): Definition {
+    var current = definition(
+            "leaf_name" of StringType() withDefault "leaf",
+            "leaf_weight" of IntegerType() withAllowedRange 0..100 withDefault 0
+    )
+    for (level in depth downTo 1) {
+        current = definition(
+                "name_$level" of StringType() withDefault "",
+                "count_$level" of IntegerType() withAllowedRange 0..1000 withDefault 0,
+                "enabled_$level" of BoolType() withDefault false,
+                "level_$level" of FreeObjectType() withDefault empty() restrictedBy current
+        )
+    }
+    return current
+}
+
+private fun collectionsDefinition() = definition(
+        "tags" of ArrayType(StringType())
+                withAllowedValuesInArray listOf("news", "sport", "music", "video")
+                withDefault emptyList(),
+
+        "ids" of ArrayType(LongType()) withDefault emptyList(),
+
+        "items" of ArrayType(FreeObjectType()) withEachElementRestrictedBy definition(
+                "id" of LongType() withDefault 0L,
+                "title" of StringType() withDefault "",
+                "weight" of IntegerType() withAllowedRange 0..100 withDefault 0
+        ) withDefault emptyList(),
+
+        "widgets" of ArrayType(FreeObjectType()) withEachElementRestrictedByAnyOf mapOf(
+                "banner" to definition(
+                        "image" of StringType() withDefault "",
+                        "clickable" of BoolType() withDefault true
+                ),
+                "carousel" to definition(
+                        "slides" of ArrayType(StringType()) withDefault emptyList(),
+                        "interval" of IntegerType() withAllowedRange 1..60 withDefault 5
+                )
+        ) withDefault emptyList(),
+
+        "labels" of FreeObjectType() withValuesType StringType() withDefault null,
+
+        "limits" of FreeObjectType() withValuesType IntegerType() withDefault null,
+
+        "sections" of FreeObjectType() withValuesType definition(
+                "visible" of BoolType() withDefault true,
+                "order" of IntegerType() withDefault 0
+        ) withDefault null
+)
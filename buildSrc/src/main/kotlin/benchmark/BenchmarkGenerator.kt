@@ -0,0 +1,54 @@
+package benchmark
+
+import ru.mail.condef.main.ConfigGenerator
+import ru.mail.condef.main.writeIfChanged
+import ru.mail.condef.renderer.ParserMode
+import ru.mail.condef.renderer.SchemaModel
+import ru.mail.condef.renderer.TextWriter
+import ru.mail.condef.renderer.toCamelCase
+import java.io.File
+
+/*
+* Generates configuration classes in every parser mode for each benchmark definition, a JMH benchmark
+* per generated package and the JSON payloads the benchmarks parse.
+*/
+class BenchmarkGenerator(
+    private val destDir: File,
+    private val resourcesDir: File,
+    private val docDir: File,
+    private val collectionSize: Int,
+    private val configurationDefinition: File
+) {
+
+    fun generate() {
+        benchmarkDefinitions(configurationDefinition).forEach { (name, definition) ->
+            val model = SchemaModel(definition)
+            ParserMode.values().forEach { mode ->
+                val packageName = "ru.mail.benchmark.$name.${mode.name.toLowerCase()}"
+                val packageDir = File(destDir, packageName.replace('.', '/'))
+                ConfigGenerator(
+                    packageName,
+                    "Configuration",
+                    "ConfigurationImpl",
+                    "ConfigurationJsonParser",
+                    destDir = packageDir.absolutePath,
+                    docFile = File(docDir, "$name-${mode.name.toLowerCase()}.html"),
+                    parserMode = mode,
+                    jsonReaderPackage = "com.google.gson.stream",
+                    definition = definition,
+                    settingsClasses = false
+                ).generate()
+
+                val className = "${name.capitalize()}${mode.name.toLowerCase().capitalize().toCamelCase()}Benchmark"
+                val writer = TextWriter()
+                BenchmarkRenderer(model, packageName, className, name, "ConfigurationImpl", "ConfigurationJsonParser", mode)
+                    .render(writer)
+                writeIfChanged(File(packageDir, "$className.java"), writer.toString())
+            }
+            val payloadDir = File(resourcesDir, "benchmark")
+            writeIfChanged(File(payloadDir, "$name.json"), PayloadGenerator(collectionSize).generate(definition))
+            writeIfChanged(File(payloadDir, "$name-rejected.json"),
+                PayloadGenerator(collectionSize, rejected = true).generate(definition))
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package benchmark
+
+import ru.mail.condef.renderer.JavaCodeRenderer
+import ru.mail.condef.renderer.ParserMode
+import ru.mail.condef.renderer.SchemaModel
+import ru.mail.condef.renderer.TextWriter
+
+/*
+* JMH state and benchmarks for one generated configuration package: parsing of accepted and rejected payloads
+* and merging a fully set configuration into an empty one.
+*/
+class BenchmarkRenderer(
+        model: SchemaModel,
+        packageName: String,
+        private val className: String,
+        private val payloadName: String,
+        private val implementationName: String,
+        private val parserClassName: String,
+        private val mode: ParserMode) : JavaCodeRenderer(model, packageName) {
+
+    override fun listDependencies(): List<String> =
+            super.listDependencies() + listOf("java.io.ByteArrayOutputStream", "java.io.IOException", "java.io.InputStream",
+                    "java.io.StringReader", "java.util.concurrent.TimeUnit", "org.json.JSONObject", "org.openjdk.jmh.annotations.*")
+
+    override fun render(writer: TextWriter) {
+        super.render(writer)
+        with(writer) {
+            nextLine()
+            append("@State(Scope.Thread)").nextLine()
+            append("@BenchmarkMode(Mode.AverageTime)").nextLine()
+            append("@OutputTimeUnit(TimeUnit.MICROSECONDS)").nextLine()
+            append("public class $className {")
+            with(withIncreasedIndentation()) {
+                append("private String mPayload;").nextLine()
+                append("private String mRejectedPayload;").nextLine()
+                append("private $parserClassName mParser;").nextLine()
+                append("private $implementationName mParsed;").nextLine(2)
+                appendSetUp()
+                nextLine(2)
+                append("@Benchmark").nextLine()
+                append("public $implementationName parse() throws Exception {")
+                withIncreasedIndentation().append("return mParser.parse(${source("mPayload")});")
+                append("}").nextLine(2)
+                append("@Benchmark").nextLine()
+                append("public $implementationName parseRejected() throws Exception {")
+                withIncreasedIndentation().append("return mParser.parse(${source("mRejectedPayload")});")
+                append("}").nextLine(2)
+                append("@Benchmark").nextLine()
+                append("public $implementationName merge() {")
+                with(withIncreasedIndentation()) {
+                    append("$implementationName target = new $implementationName();").nextLine()
+                    append("target.merge(mParsed);").nextLine()
+                    append("return target;")
+                }
+                append("}").nextLine(2)
+                appendRead()
+            }
+            append("}")
+        }
+    }
+
+    private fun TextWriter.appendSetUp() {
+        append("@Setup").nextLine()
+        append("public void setUp() throws Exception {")
+        with(withIncreasedIndentation()) {
+            append("mPayload = read(\"/benchmark/$payloadName.json\");").nextLine()
+            append("mRejectedPayload = read(\"/benchmark/$payloadName-rejected.json\");").nextLine()
+            append("mParser = new $parserClassName(new AnalyticsSender() {")
+            with(withIncreasedIndentation()) {
+                append("@Override").nextLine()
+                append("public void sendParsingConfigError(String fieldName, String reason, String actionTaken) {")
+                append("}")
+            }
+            append("});").nextLine()
+            append("mParsed = parse();")
+        }
+        append("}")
+    }
+
+    private fun TextWriter.appendRead() {
+        append("private static String read(String resource) throws IOException {")
+        with(withIncreasedIndentation()) {
+            append("InputStream input = $className.class.getResourceAsStream(resource);").nextLine()
+            append("try {")
+            with(withIncreasedIndentation()) {
+                append("ByteArrayOutputStream output = new ByteArrayOutputStream();").nextLine()
+                append("byte[] buffer = new byte[8192];").nextLine()
+                append("int read;").nextLine()
+                append("while ((read = input.read(buffer)) != -1) {")
+                withIncreasedIndentation().append("output.write(buffer, 0, read);")
+                append("}").nextLine()
+                append("return output.toString(\"UTF-8\");")
+            }
+            append("} finally {")
+            withIncreasedIndentation().append("input.close();")
+            append("}")
+        }
+        append("}")
+    }
+
+    private fun source(payload: String) = when (mode) {
+        ParserMode.TREE -> "new JSONObject($payload)"
+        ParserMode.STREAMING, ParserMode.TABLE -> "new StringReader($payload)"
+    }
+}
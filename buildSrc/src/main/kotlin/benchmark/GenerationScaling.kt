@@ -0,0 +1,94 @@
+package benchmark
+
+import ru.mail.condef.dsl.Definition
+import ru.mail.condef.dsl.StrictObjectType
+import ru.mail.condef.main.ConfigGenerator
+import ru.mail.condef.renderer.FieldStorage
+import ru.mail.condef.renderer.ParserMode
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.*
+
+/*
+* Measures how the generator itself scales: every class is generated for synthetic definitions of growing width
+* and depth, and the best time and the bytes allocated by the generating thread are reported per size.
+* Time and allocations per field should stay flat while the definition grows. Allocations are measured with
+* sequential rendering, the parallel time is the one of the default thread count.
+*/
+class GenerationScaling(
+    private val destDir: File,
+    private val reportFile: File,
+    private val fieldCounts: List<Int> = listOf(1000, 2500, 5000, 10000, 20000),
+    private val depths: List<Int> = listOf(25, 50, 100, 200),
+    private val repetitions: Int = 3
+) {
+
+    private class Sample(val shape: String, val size: Int, val fields: Int, val nanos: Long, val parallelNanos: Long,
+                         val allocatedBytes: Long)
+
+    fun measure(): String {
+        // the first run only loads and warms up the generator
+        generate("warmup", wideDefinition(10, 100))
+
+        val samples = fieldCounts.map { sample("wide", it, wideDefinition(it / 100, 100)) } +
+                depths.map { sample("deep", it, deepDefinition(it)) }
+        val report = render(samples)
+        reportFile.parentFile?.mkdirs()
+        reportFile.writeText(report, Charsets.UTF_8)
+        return report
+    }
+
+    private fun sample(shape: String, size: Int, definition: Definition): Sample {
+        var bestNanos = Long.MAX_VALUE
+        var bestParallelNanos = Long.MAX_VALUE
+        var bestAllocated = Long.MAX_VALUE
+        repeat(repetitions) {
+            val allocatedBefore = allocatedBytes()
+            val start = System.nanoTime()
+            generate("$shape$size", definition, threads = 1)
+            bestNanos = minOf(bestNanos, System.nanoTime() - start)
+            bestAllocated = minOf(bestAllocated, allocatedBytes() - allocatedBefore)
+
+            val parallelStart = System.nanoTime()
+            generate("$shape$size", definition)
+            bestParallelNanos = minOf(bestParallelNanos, System.nanoTime() - parallelStart)
+        }
+        return Sample(shape, size, countFields(definition), bestNanos, bestParallelNanos, bestAllocated)
+    }
+
+    private fun generate(name: String, definition: Definition, threads: Int = Runtime.getRuntime().availableProcessors()) {
+        val packageName = "ru.mail.scaling.$name"
+        ConfigGenerator(
+            packageName,
+            destDir = File(destDir, packageName.replace('.', '/')).absolutePath,
+            docFile = File(destDir, "$name.html"),
+            parserMode = ParserMode.STREAMING,
+            fieldStorage = FieldStorage.PACKED,
+            snapshots = true,
+            binaryCodec = true,
+            definition = definition,
+            threads = threads
+        ).generate()
+    }
+
+    private fun render(samples: List<Sample>): String = StringBuilder().apply {
+        append("| shape | size | fields | time, ms | parallel time, ms | time per field, us | allocated, MB | allocated per field, KB |\n")
+        append("|---|---|---|---|---|---|---|---|\n")
+        samples.forEach {
+            append(String.format(Locale.ENGLISH, "| %s | %d | %d | %.1f | %.1f | %.2f | %.1f | %.2f |\n",
+                    it.shape, it.size, it.fields,
+                    it.nanos / 1e6, it.parallelNanos / 1e6, it.nanos / 1e3 / it.fields,
+                    it.allocatedBytes / 1048576.0, it.allocatedBytes / 1024.0 / it.fields))
+        }
+    }.toString()
+
+    private fun countFields(definition: Definition): Int = definition.fields.sumBy {
+        val type = it.type
+        1 + if (type is StrictObjectType) countFields(type.definition) else 0
+    }
+
+    private fun allocatedBytes(): Long {
+        val threads = ManagementFactory.getThreadMXBean()
+        return if (threads is com.sun.management.ThreadMXBean) threads.getThreadAllocatedBytes(Thread.currentThread().id) else 0L
+    }
+}
@@ -0,0 +1,81 @@
+package benchmark
+
+import ru.mail.condef.dsl.*
+import ru.mail.condef.renderer.asJsonFieldName
+
+/*
+* Produces a JSON document setting every field of a definition. With `rejected`, every validated optional field
+* gets a value its validator refuses, so the parser goes through the substitution path instead.
+*/
+class PayloadGenerator(private val collectionSize: Int, private val rejected: Boolean = false) {
+
+    fun generate(definition: Definition): String = StringBuilder().also { appendObject(it, definition) }.toString()
+
+    private fun appendObject(out: StringBuilder, definition: Definition, variant: String? = null) {
+        out.append('{')
+        variant?.let {
+            out.append("\"type\":").append(quote(it))
+        }
+        definition.fields.forEachIndexed { index, field ->
+            if (index != 0 || variant != null) {
+                out.append(',')
+            }
+            out.append(quote(field.name.asJsonFieldName())).append(':')
+            appendValue(out, field, field.type, rejected && field.absenceHandler !is RequiredHandler, 0)
+        }
+        out.append('}')
+    }
+
+    private fun appendValue(out: StringBuilder, field: Field<*>, type: Type<*>, reject: Boolean, index: Int) {
+        when (type) {
+            is StringType -> out.append(quote(sampleString(field, reject, index)))
+            is IntegerType -> out.append(sampleInteger(field, reject, index))
+            is LongType -> out.append(1_500_000_000_000L + index)
+            is BoolType -> out.append(index % 2 == 0)
+            is StrictObjectType -> appendObject(out, type.definition)
+            is MultiObjectType -> type.types.entries.elementAt(index % type.types.size).let {
+                appendObject(out, it.value, it.key)
+            }
+            is ArrayType<*> -> {
+                out.append('[')
+                for (element in 0 until collectionSize) {
+                    if (element != 0) {
+                        out.append(',')
+                    }
+                    appendValue(out, field, type.subtype, reject, element)
+                }
+                out.append(']')
+            }
+            is FreeObjectType -> {
+                out.append('{')
+                for (element in 0 until collectionSize) {
+                    if (element != 0) {
+                        out.append(',')
+                    }
+                    out.append(quote("key_$element")).append(':')
+                    appendValue(out, field, type.subtype ?: StringType(), reject, element)
+                }
+                out.append('}')
+            }
+        }
+    }
+
+    private fun sampleString(field: Field<*>, reject: Boolean, index: Int): String = when (val validator = field.validator) {
+        is SpecialValuesValidator<*> -> if (reject) "rejected" else validator.values[index % validator.values.size] as String
+        is RegexValidator -> if (reject) "!" else regexSamples.firstOrNull { validator.pattern.matcher(it).matches() }
+                ?: throw IllegalStateException("No payload sample matches the pattern of `${field.name.rawText}`")
+        else -> "value_$index"
+    }
+
+    private fun sampleInteger(field: Field<*>, reject: Boolean, index: Int): Int = when (val validator = field.validator) {
+        is SpecialValuesValidator<*> -> if (reject) Int.MIN_VALUE else validator.values[index % validator.values.size] as Int
+        is RangeValidator -> if (reject) validator.toInclusive + 1 else validator.fromInclusive + index % (validator.toInclusive - validator.fromInclusive + 1)
+        else -> index
+    }
+
+    private fun quote(value: String) = "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+
+    companion object {
+        private val regexSamples = listOf("12.11.2019", "value", "0")
+    }
+}
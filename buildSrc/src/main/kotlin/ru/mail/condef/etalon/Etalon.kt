@@ -0,0 +1,106 @@
+package ru.mail.condef.etalon
+
+import ru.mail.condef.dsl.*
+import ru.mail.condef.renderer.asJsonFieldName
+import java.io.File
+import java.util.*
+
+/*
+* Configuration value checked against a definition at build time. Values keep the JSON order of fields and
+* hold only what the JSON contains, so the generated code sets exactly the fields the parser would have set.
+*/
+class EtalonObject(val definition: Definition, val values: List<Pair<Field<*>, Any>>)
+
+class EtalonVariant(val key: String, val value: EtalonObject)
+
+/*
+* Parses the etalon and validates it with the rules of the generated parser. Anything the parser would reject,
+* substitute or ignore, including unknown keys, fails the build instead.
+*/
+fun readEtalon(file: File, definition: Definition): EtalonObject {
+    val json = try {
+        JsonValueParser(file.readText(Charsets.UTF_8)).parse()
+    } catch (e: IllegalArgumentException) {
+        throw IllegalStateException("Etalon ${file.name} is not a valid JSON: ${e.message}", e)
+    }
+    return EtalonReader(file.name).readObject(json, definition, "")
+}
+
+private class EtalonReader(private val source: String) {
+
+    fun readObject(json: Any?, definition: Definition, path: String, ignoredKeys: Set<String> = emptySet()): EtalonObject {
+        if (json !is Map<*, *>) {
+            fail(path, "object expected")
+        }
+        val fields = definition.fields.associateBy { it.name.asJsonFieldName() }
+        json.keys.firstOrNull { it !in fields && it !in ignoredKeys }?.let {
+            fail(path.child(it as String), "unknown field")
+        }
+        definition.fields
+                .firstOrNull { it.absenceHandler is RequiredHandler && !json.containsKey(it.name.asJsonFieldName()) }
+                ?.let { fail(path.child(it.name.asJsonFieldName()), "required field is missing") }
+        val values = json.entries
+                .filter { it.key !in ignoredKeys }
+                .map {
+                    val field = fields.getValue(it.key as String)
+                    field to readValue(it.value, field, field.type, path.child(it.key as String))
+                }
+        return EtalonObject(definition, values)
+    }
+
+    private fun readValue(json: Any?, field: Field<*>, type: Type<*>, path: String): Any = when (type) {
+        is StringType -> (json as? String ?: fail(path, "string expected")).also { validate(it, field, path) }
+        is IntegerType -> readInteger(json, path).also { validate(it, field, path) }
+        is LongType -> readLong(json, path).also { validate(it, field, path) }
+        is BoolType -> json as? Boolean ?: fail(path, "boolean expected")
+        is StrictObjectType -> readObject(json, type.definition, path)
+        is MultiObjectType -> readVariant(json, type, path)
+        is ArrayType<*> -> (json as? List<*> ?: fail(path, "array expected")).mapIndexed { index, element ->
+            readValue(element, field, type.subtype, "$path[$index]")
+        }
+        is FreeObjectType -> (json as? Map<*, *> ?: fail(path, "object expected")).entries.associateTo(LinkedHashMap()) {
+            it.key as String to readValue(it.value, field, type.subtype ?: fail(path, "values type is not defined"),
+                    path.child(it.key as String))
+        }
+    }
+
+    private fun readVariant(json: Any?, type: MultiObjectType, path: String): EtalonVariant {
+        if (json !is Map<*, *>) {
+            fail(path, "object expected")
+        }
+        val key = json["type"] as? String ?: fail(path.child("type"), "string expected")
+        val definition = type.types[key] ?: fail(path.child("type"), "unknown type `$key`, expected one of ${type.types.keys}")
+        return EtalonVariant(key, readObject(json, definition, path, setOf("type")))
+    }
+
+    private fun readInteger(json: Any?, path: String): Int {
+        val value = readLong(json, path)
+        if (value < Int.MIN_VALUE || value > Int.MAX_VALUE) {
+            fail(path, "$value does not fit into int")
+        }
+        return value.toInt()
+    }
+
+    private fun readLong(json: Any?, path: String): Long = json as? Long ?: fail(path, "integer expected")
+
+    private fun validate(value: Any, field: Field<*>, path: String) {
+        val accepted = when (val validator = field.validator) {
+            null -> true
+            is SpecialValuesValidator<*> -> when (value) {
+                is String -> validator.values.any { it is String && it.toLowerCase(Locale.ENGLISH) == value.toLowerCase(Locale.ENGLISH) }
+                is Int -> validator.values.any { it is Number && it.toLong() == value.toLong() }
+                else -> validator.values.contains(value)
+            }
+            is RegexValidator -> validator.pattern.matcher(value as String).matches()
+            is RangeValidator -> (value as Number).toLong() in validator.fromInclusive..validator.toInclusive
+        }
+        if (!accepted) {
+            fail(path, "value `$value` is not accepted by the validator")
+        }
+    }
+
+    private fun String.child(key: String) = if (isEmpty()) key else "$this.$key"
+
+    private fun fail(path: String, message: String): Nothing =
+            throw IllegalStateException("Etalon $source does not match the definition at `$path`: $message")
+}
@@ -0,0 +1,159 @@
+package ru.mail.condef.etalon
+
+/*
+* Minimal JSON reader for build time inputs. Objects become LinkedHashMap to keep the order of keys,
+* integral numbers become Long and the rest of numbers Double.
+*/
+class JsonValueParser(private val text: String) {
+
+    private var position = 0
+
+    fun parse(): Any? {
+        val value = readValue()
+        skipWhitespace()
+        if (position != text.length) {
+            fail("Unexpected trailing content")
+        }
+        return value
+    }
+
+    private fun readValue(): Any? {
+        skipWhitespace()
+        if (position >= text.length) {
+            fail("Unexpected end of input")
+        }
+        return when (text[position]) {
+            '{' -> readObject()
+            '[' -> readArray()
+            '"' -> readString()
+            't' -> readLiteral("true", true)
+            'f' -> readLiteral("false", false)
+            'n' -> readLiteral("null", null)
+            else -> readNumber()
+        }
+    }
+
+    private fun readObject(): Map<String, Any?> {
+        val result = LinkedHashMap<String, Any?>()
+        expect('{')
+        skipWhitespace()
+        if (peek() == '}') {
+            position++
+            return result
+        }
+        while (true) {
+            skipWhitespace()
+            val key = readString()
+            if (result.containsKey(key)) {
+                fail("Duplicate key `$key`")
+            }
+            skipWhitespace()
+            expect(':')
+            result[key] = readValue()
+            skipWhitespace()
+            if (peek() == ',') {
+                position++
+            } else {
+                expect('}')
+                return result
+            }
+        }
+    }
+
+    private fun readArray(): List<Any?> {
+        val result = ArrayList<Any?>()
+        expect('[')
+        skipWhitespace()
+        if (peek() == ']') {
+            position++
+            return result
+        }
+        while (true) {
+            result.add(readValue())
+            skipWhitespace()
+            if (peek() == ',') {
+                position++
+            } else {
+                expect(']')
+                return result
+            }
+        }
+    }
+
+    private fun readString(): String {
+        expect('"')
+        val builder = StringBuilder()
+        while (true) {
+            if (position >= text.length) {
+                fail("Unterminated string")
+            }
+            val c = text[position++]
+            when (c) {
+                '"' -> return builder.toString()
+                '\\' -> {
+                    if (position >= text.length) {
+                        fail("Unterminated escape sequence")
+                    }
+                    when (val escaped = text[position++]) {
+                        '"', '\\', '/' -> builder.append(escaped)
+                        'b' -> builder.append('\b')
+                        'f' -> builder.append('\u000C')
+                        'n' -> builder.append('\n')
+                        'r' -> builder.append('\r')
+                        't' -> builder.append('\t')
+                        'u' -> {
+                            if (position + 4 > text.length) {
+                                fail("Malformed unicode escape")
+                            }
+                            builder.append(text.substring(position, position + 4).toIntOrNull(16)?.toChar()
+                                    ?: fail("Malformed unicode escape"))
+                            position += 4
+                        }
+                        else -> fail("Unknown escape sequence \\$escaped")
+                    }
+                }
+                else -> builder.append(c)
+            }
+        }
+    }
+
+    private fun readNumber(): Number {
+        val start = position
+        while (position < text.length && text[position] in "+-0123456789.eE") {
+            position++
+        }
+        val number = text.substring(start, position)
+        if (number.isEmpty()) {
+            fail("Unexpected character `${text[start]}`")
+        }
+        return number.toLongOrNull() ?: number.toDoubleOrNull() ?: fail("Malformed number `$number`")
+    }
+
+    private fun readLiteral(literal: String, value: Any?): Any? {
+        if (!text.startsWith(literal, position)) {
+            fail("Unexpected character `${text[position]}`")
+        }
+        position += literal.length
+        return value
+    }
+
+    private fun skipWhitespace() {
+        while (position < text.length && text[position].isWhitespace()) {
+            position++
+        }
+    }
+
+    private fun peek(): Char? = if (position < text.length) text[position] else null
+
+    private fun expect(c: Char) {
+        if (peek() != c) {
+            fail("Expected `$c`")
+        }
+        position++
+    }
+
+    private fun fail(message: String): Nothing {
+        val line = text.substring(0, minOf(position, text.length)).count { it == '\n' } + 1
+        throw IllegalArgumentException("$message at line $line")
+    }
+}
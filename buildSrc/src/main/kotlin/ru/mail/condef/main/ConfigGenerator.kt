@@ -1,10 +1,19 @@
 package ru.mail.condef.main
 
-import dsl.rootDefinition
+import ru.mail.condef.dsl.Definition
+import ru.mail.condef.etalon.readEtalon
 import ru.mail.condef.renderer.*
+import ru.mail.condef.report.ArtifactReport
+import ru.mail.condef.report.CodeReport
+import ru.mail.condef.report.estimateObjectCount
+import ru.mail.condef.report.readClassFile
+import ru.mail.condef.schema.readDefinition
 import java.io.File
-import java.io.IOException
-import java.nio.charset.Charset
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
 
 class ConfigGenerator(
     val packageName: String = "ru.mail",
@@ -15,44 +24,168 @@ class ConfigGenerator(
     val settingsMapperClassName: String = "ConfigSettingsMapper",
     val destDir: String = "generated",
     val docFile: File = File("generatedDoc/configuration.html"),
-    val versionCode: String = "1900_alpha"
+    val versionCode: String = "1900_alpha",
+    val parserMode: ParserMode = ParserMode.TREE,
+    val jsonReaderPackage: String = "android.util",
+    val fieldStorage: FieldStorage = FieldStorage.BOXED,
+    val snapshots: Boolean = false,
+    val binaryCodec: Boolean = false,
+    val etalonFile: File? = null,
+    val lazySubtrees: Boolean = false,
+    val definition: Definition,
+    val settingsClasses: Boolean = true,
+    val classLayout: ClassLayout = ClassLayout.NESTED,
+    val maxMethodBytes: Int = MethodBudget.DEFAULT_MAX_BYTES,
+    val threads: Int = Runtime.getRuntime().availableProcessors()
 ) {
     companion object {
         @JvmStatic
         fun main(argv: Array<String>) {
-            ConfigGenerator("ru.mail").generate()
+            ConfigGenerator("ru.mail", definition = readDefinition(File(argv[0]))).generate()
         }
     }
 
-    fun generate() {
+    private val snapshotClassName get() = "${interfaceName}Snapshot"
+
+    private val storeClassName get() = "${interfaceName}Store"
+
+    private val codecClassName get() = "${interfaceName}BinaryCodec"
+
+    private val etalonClassName get() = "${interfaceName}Etalon"
+
+    private class Output(val renderer: Renderer, val file: File, val parser: Boolean)
+
+    private val outputs = mutableListOf<Output>()
+
+    /*
+    * Renderers are independent of each other, they are collected first and then rendered and written in parallel
+    * on `threads` threads. Returns every file of this run, written or left untouched because its content
+    * did not change.
+    */
+    fun generate(): List<File> {
+        collectOutputs(SchemaModel(definition, classLayout))
+        renderOutputs()
+        return outputs.map { it.file }
+    }
+
+    /*
+    * Report of the generated classes compiled to `classesDir`, one entry per generated file. Fails when
+    * a generated file has no compiled classes there.
+    */
+    fun report(classesDir: File): CodeReport {
+        val model = SchemaModel(definition, classLayout)
+        collectOutputs(model)
+        val packageDir = File(classesDir, packageName.replace('.', '/'))
+        val artifacts = outputs.filter { it.file.extension == "java" }.map { output ->
+            val name = output.file.nameWithoutExtension
+            val classes = packageDir.listFiles { file -> file.name == "$name.class" || file.name.startsWith("$name\$") }
+                ?.sortedBy { it.name }
+                ?.map { readClassFile(it) }
+                .orEmpty()
+            if (classes.isEmpty()) {
+                throw IllegalStateException("No compiled classes of ${output.file.name} in $packageDir")
+            }
+            ArtifactReport(output.file.name, output.parser, classes)
+        }
+        return CodeReport(packageName, artifacts, estimateObjectCount(model, fieldStorage))
+    }
+
+    private fun collectOutputs(model: SchemaModel) {
+        outputs.clear()
+        val budget = MethodBudget(maxMethodBytes)
+
         ConfigCodeRenderer(
-            rootDefinition,
-            InterfaceGenerationStrategy(interfaceName),
+            model,
+            InterfaceGenerationStrategy(interfaceName, storage = fieldStorage),
             packageName
         ).renderToFile("$destDir/$interfaceName.java")
 
         ConfigCodeRenderer(
-            rootDefinition,
-            ImplementationGenerationStrategy(interfaceName, implClassName, static = false),
+            model,
+            ImplementationGenerationStrategy(interfaceName, implClassName, static = false, storage = fieldStorage,
+                lazySubtrees = lazySubtrees),
             packageName
         ).renderToFile("$destDir/$implClassName.java")
 
-        ConfigSettingsDefinitionRenderer(
-            rootDefinition,
-            packageName
-        ).renderToFile("$destDir/$settingsDefinitionClassName.java")
+        if (snapshots) {
+            ConfigCodeRenderer(
+                model,
+                SnapshotGenerationStrategy(interfaceName, snapshotClassName, implClassName, static = false, storage = fieldStorage),
+                packageName
+            ).renderToFile("$destDir/$snapshotClassName.java")
 
-        ConfigSettingsMapperRenderer(
-            rootDefinition,
-            packageName
-        ).renderToFile("$destDir/$settingsMapperClassName.java")
+            SnapshotStoreRenderer(
+                model,
+                packageName,
+                storeClassName,
+                snapshotClassName,
+                interfaceName
+            ).renderToFile("$destDir/$storeClassName.java")
+        }
+
+        if (binaryCodec) {
+            BinaryCodecRenderer(
+                model,
+                packageName,
+                codecClassName,
+                interfaceName,
+                implClassName,
+                fieldStorage
+            ).renderToFile("$destDir/$codecClassName.java")
+        }
+
+        if (etalonFile != null) {
+            EtalonFactoryRenderer(
+                model,
+                packageName,
+                readEtalon(etalonFile, definition),
+                etalonClassName,
+                interfaceName,
+                implClassName
+            ).renderToFile("$destDir/$etalonClassName.java")
+        }
+
+        if (settingsClasses) {
+            ConfigSettingsDefinitionRenderer(
+                model,
+                packageName,
+                budget,
+                settingsDefinitionClassName
+            ).renderToFile("$destDir/$settingsDefinitionClassName.java")
 
-        ParserRenderer(
-            rootDefinition,
+            ConfigSettingsMapperRenderer(
+                model,
+                packageName,
+                budget,
+                settingsDefinitionClassName
+            ).renderToFile("$destDir/$settingsMapperClassName.java")
+        }
+
+        val parser = ParserRenderer(
+            model,
             packageName,
             parserClassName,
-            implClassName
-        ).renderToFile("$destDir/$parserClassName.java")
+            implClassName,
+            parserMode,
+            jsonReaderPackage,
+            fieldStorage,
+            lazySubtrees,
+            budget
+        )
+        parser.renderToFile("$destDir/$parserClassName.java", parser = true)
+        parser.splitClasses().forEach { (name, renderer) ->
+            renderer.renderToFile("$destDir/$name.java", parser = true)
+        }
+
+        if (classLayout == ClassLayout.SPLIT) {
+            addSplitObjectClasses(model)
+        }
+
+        if (lazySubtrees) {
+            LazySubtreeRenderer(
+                packageName
+            ).renderToFile("$destDir/LazySubtree.java")
+        }
 
         AnalyticsSenderRenderer(
             packageName
@@ -62,28 +195,96 @@ class ConfigGenerator(
             packageName
         ).renderToFile("$destDir/RequiredFieldException.java")
 
-        DocumentationRenderer(rootDefinition, versionCode)
+        DocumentationRenderer(model, versionCode)
             .renderToFile(docFile.absolutePath)
     }
 
-    private fun Renderer.renderToFile(fileName: String) {
-        val writer = TextWriter()
-        render(writer)
+    /*
+    * Interface, implementation and snapshot of every object, and the base interface of every multi object,
+    * each in a file of its own.
+    */
+    private fun addSplitObjectClasses(model: SchemaModel) {
+        model.objects.filter { !it.isRoot }.forEach {
+            ConfigCodeRenderer(
+                model,
+                InterfaceGenerationStrategy(interfaceName, storage = fieldStorage),
+                packageName,
+                it
+            ).renderToFile("$destDir/${it.className}.java")
+
+            ConfigCodeRenderer(
+                model,
+                ImplementationGenerationStrategy(interfaceName, implClassName, static = false, storage = fieldStorage,
+                    lazySubtrees = lazySubtrees),
+                packageName,
+                it
+            ).renderToFile("$destDir/${it.className}Impl.java")
 
-        val file = File(fileName)
-        if (file.exists() && !file.delete()) {
-            throw IOException("Cannot delete previous version of " + fileName)
+            if (snapshots) {
+                ConfigCodeRenderer(
+                    model,
+                    SnapshotGenerationStrategy(interfaceName, snapshotClassName, implClassName, static = false, storage = fieldStorage),
+                    packageName,
+                    it
+                ).renderToFile("$destDir/${it.className}Snapshot.java")
+            }
         }
-        val parent = File(file.parent)
-        if (!parent.exists() && !parent.mkdirs()) {
-            throw IOException("Cannot create dirs for " + file.parent)
+        model.fields.filter { it.variants.isNotEmpty() }.forEach {
+            MultiObjectBaseRenderer(
+                model,
+                it,
+                packageName
+            ).renderToFile("$destDir/${it.className}Base.java")
+        }
+    }
+
+    private fun Renderer.renderToFile(fileName: String, parser: Boolean = false) {
+        outputs.add(Output(this, File(fileName), parser))
+    }
+
+    private fun render(output: Output) {
+        val content = StringBuilder()
+        TextWriter(content).append(output.renderer).close()
+        writeIfChanged(output.file, content)
+    }
+
+    /*
+    * Every output is rendered even when another one fails. The first failure is rethrown with the others
+    * added to it as suppressed.
+    */
+    private fun renderOutputs() {
+        if (threads <= 1) {
+            outputs.forEach { render(it) }
+            return
         }
-        val printWriter = file.printWriter(Charset.forName("UTF-8"))
+        val executor = Executors.newFixedThreadPool(minOf(threads, outputs.size), RenderThreadFactory())
         try {
-            printWriter.print(writer.toString())
+            val futures: List<Future<*>> = outputs.map { executor.submit { render(it) } }
+            var failure: Throwable? = null
+            futures.forEach {
+                try {
+                    it.get()
+                } catch (e: ExecutionException) {
+                    val cause = e.cause ?: e
+                    val first = failure
+                    if (first == null) {
+                        failure = cause
+                    } else {
+                        first.addSuppressed(cause)
+                    }
+                }
+            }
+            failure?.let { throw it }
         } finally {
-            printWriter.close()
+            executor.shutdownNow()
         }
     }
-}
 
+    private class RenderThreadFactory : ThreadFactory {
+        private val count = AtomicInteger()
+
+        override fun newThread(runnable: Runnable) = Thread(runnable, "config-renderer-${count.incrementAndGet()}").apply {
+            isDaemon = true
+        }
+    }
+}
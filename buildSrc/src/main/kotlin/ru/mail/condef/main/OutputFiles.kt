@@ -0,0 +1,23 @@
+package ru.mail.condef.main
+
+import java.io.File
+import java.io.IOException
+
+/*
+* Writes the file only when its content differs from the one on disk, so regenerating unchanged sources keeps
+* their timestamps and does not make javac and kapt recompile everything that depends on them.
+* Returns true when the file was written.
+*/
+fun writeIfChanged(file: File, content: CharSequence): Boolean {
+    val bytes = content.toString().toByteArray(Charsets.UTF_8)
+    if (file.isFile && file.length() == bytes.size.toLong() && file.readBytes().contentEquals(bytes)) {
+        return false
+    }
+    val parent = file.absoluteFile.parentFile
+    // outputs are written in parallel, another one may create the directory in between
+    if (!parent.mkdirs() && !parent.isDirectory) {
+        throw IOException("Cannot create dirs for " + parent)
+    }
+    file.writeBytes(bytes)
+    return true
+}
@@ -0,0 +1,418 @@
+package ru.mail.condef.renderer
+
+import ru.mail.condef.dsl.*
+
+/*
+* Compact binary form of a configuration. Every object is written as a sequence of (field ordinal, value) pairs
+* terminated by 0, only for fields that were set, so unset fields come back with their defaults. Numbers are
+* zigzag varints, strings length-prefixed UTF-8, and the header carries a fingerprint of the schema. Lengths are
+* bounded on read, a corrupt file fails with IOException instead of a huge allocation.
+*/
+class BinaryCodecRenderer(
+        model: SchemaModel,
+        packageName: String,
+        private val codecName: String,
+        private val interfaceName: String,
+        private val implementationName: String,
+        private val storage: FieldStorage = FieldStorage.BOXED) : JavaCodeRenderer(model, packageName) {
+
+    private val objects = model.objects.map {
+        CodecObject(it, it.interfaceName(interfaceName), it.implementationName(implementationName))
+    }
+
+    override fun listDependencies(): List<String> =
+            super.listDependencies() + listOf("java.io.DataInput", "java.io.DataOutput", "java.io.IOException",
+                    "java.nio.charset.Charset") + model.nestedTypeImports(packageName, interfaceName, implementationName)
+
+    override fun render(writer: TextWriter) {
+        super.render(writer)
+        with(writer) {
+            nextLine()
+            append("public final class $codecName {")
+            with(withIncreasedIndentation()) {
+                append("public static final long FINGERPRINT = 0x${java.lang.Long.toHexString(schemaFingerprint(definition))}L;").nextLine(2)
+                append("private static final int MAGIC = 0x${Integer.toHexString(MAGIC)};").nextLine(2)
+                append("private static final int INITIAL_CAPACITY = $INITIAL_CAPACITY;").nextLine(2)
+                append("private static final int MAX_LENGTH = 0x${Integer.toHexString(MAX_LENGTH)};").nextLine(2)
+                append("private static final Charset UTF_8 = Charset.forName(\"UTF-8\");").nextLine(2)
+                append("private $codecName() {")
+                append("}")
+            }
+            withIncreasedIndentation().join(listOf(EntryMethods()) +
+                    objects.flatMap { listOf(WriteObjectMethod(it), ReadObjectMethod(it)) } +
+                    objects.flatMap { it.node.fields }.flatMap { collectionAndVariantMethods(it, it.type) } +
+                    PrimitiveMethods()) {
+                nextLine(2)
+            }
+            append("}")
+        }
+    }
+
+    private inner class EntryMethods : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("public static void write($interfaceName configuration, DataOutput out) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("out.writeInt(MAGIC);").nextLine()
+                    append("out.writeLong(FINGERPRINT);").nextLine()
+                    append("write$interfaceName(configuration, out);")
+                }
+                append("}").nextLine(2)
+
+                append("/*").nextLine()
+                append(" * Throws IOException when the data was written for another schema, callers fall back to JSON then.").nextLine()
+                append(" */").nextLine()
+                append("public static $implementationName read(DataInput in) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("if (in.readInt() != MAGIC || in.readLong() != FINGERPRINT) {")
+                    withIncreasedIndentation().append("throw new IOException(\"Binary configuration was written for a different schema\");")
+                    append("}").nextLine()
+                    append("return read$interfaceName(in, new $implementationName());")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private inner class WriteObjectMethod(private val obj: CodecObject) : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private static void write${obj.className}(${obj.className} value, DataOutput out) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    obj.node.fields.forEach { field ->
+                        val index = field.ordinal
+                        val getter = "value.${field.getterName}()"
+                        if (field.type is StrictObjectType) {
+                            append("if ($getter != null) {")
+                            with(withIncreasedIndentation()) {
+                                append("writeVarint(out, ${index + 1});").nextLine()
+                                append("out.writeBoolean(value.${field.getterName}Set());").nextLine()
+                                append(writeStatement(field, field.type, getter))
+                            }
+                        } else {
+                            val nullable = storage == FieldStorage.BOXED &&
+                                    (field.type is IntegerType || field.type is LongType || field.type is BoolType)
+                            append("if (value.${field.getterName}Set()${if (nullable) " && $getter != null" else ""}) {")
+                            with(withIncreasedIndentation()) {
+                                append("writeVarint(out, ${index + 1});").nextLine()
+                                append(writeStatement(field, field.type, getter))
+                            }
+                        }
+                        append("}").nextLine()
+                    }
+                    append("writeVarint(out, 0);")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private inner class ReadObjectMethod(private val obj: CodecObject) : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private static ${obj.implName} read${obj.className}(DataInput in, ${obj.implName} obj) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("while (true) {")
+                    with(withIncreasedIndentation()) {
+                        append("int ordinal = (int) readVarint(in);").nextLine()
+                        append("switch (ordinal) {")
+                        with(withIncreasedIndentation()) {
+                            append("case 0:")
+                            withIncreasedIndentation().append("return obj;")
+                            obj.node.fields.forEach { field ->
+                                append("case ${field.ordinal + 1}:")
+                                with(withIncreasedIndentation()) {
+                                    val type = field.type
+                                    if (type is StrictObjectType) {
+                                        val className = field.className
+                                        append("if (in.readBoolean()) {")
+                                        withIncreasedIndentation().append("obj.${field.setterName}(${readExpression(field, type)});")
+                                        append("} else {")
+                                        withIncreasedIndentation().append("read$className(in, (${className}Impl) obj.${field.getterName}());")
+                                        append("}").nextLine()
+                                    } else {
+                                        append("obj.${field.setterName}(${readExpression(field, type)});").nextLine()
+                                    }
+                                    append("break;")
+                                }
+                            }
+                            append("default: {")
+                            withIncreasedIndentation().append("throw new IOException(\"Unknown field \" + ordinal + \" of ${obj.className}\");")
+                            append("}")
+                        }
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private fun collectionAndVariantMethods(field: FieldNode, type: Type<*>): List<Renderer> = when (type) {
+        is MultiObjectType -> listOf(VariantMethods(field))
+        is ArrayType<*> -> listOf(ListMethods(field, type)) + elementMethods(field, type.subtype)
+        is FreeObjectType -> listOf(MapMethods(field, type)) + elementMethods(field, type.subtype!!)
+        else -> emptyList()
+    }
+
+    private fun elementMethods(field: FieldNode, type: Type<*>): List<Renderer> = when (type) {
+        is MultiObjectType -> listOf(VariantMethods(field))
+        is ArrayType<*>, is FreeObjectType ->
+            throw IllegalStateException("Binary codec does not support nested collections in field `${field.jsonName}`")
+        else -> emptyList()
+    }
+
+    private fun writeStatement(field: FieldNode, type: Type<*>, value: String): String = when (type) {
+        is StringType -> "writeString(out, $value);"
+        is IntegerType, is LongType -> "writeVarint(out, encodeZigZag($value));"
+        is BoolType -> "out.writeBoolean($value);"
+        is MultiObjectType -> "write${field.className}Base($value, out);"
+        is StrictObjectType, is ArrayType<*>, is FreeObjectType -> "write${field.className}($value, out);"
+    }
+
+    private fun readExpression(field: FieldNode, type: Type<*>): String = when (type) {
+        is StringType -> "readString(in)"
+        is IntegerType -> "(int) decodeZigZag(readVarint(in))"
+        is LongType -> "decodeZigZag(readVarint(in))"
+        is BoolType -> "in.readBoolean()"
+        is StrictObjectType -> "read${field.className}(in, new ${field.className}Impl())"
+        is MultiObjectType -> "read${field.className}Base(in)"
+        is ArrayType<*>, is FreeObjectType -> "read${field.className}(in)"
+    }
+
+    private inner class ListMethods(private val field: FieldNode, private val type: ArrayType<*>) : Renderer {
+        override fun render(writer: TextWriter) {
+            val typeName = field.typeName
+            val elementTypeName = inferFieldTypeName(field.name, type.subtype)
+            with(writer) {
+                append("private static void write${field.className}($typeName value, DataOutput out) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("writeVarint(out, value == null ? 0 : value.size() + 1);").nextLine()
+                    append("if (value != null) {")
+                    with(withIncreasedIndentation()) {
+                        append("for ($elementTypeName element : value) {")
+                        withIncreasedIndentation().append(writeStatement(field, type.subtype, "element"))
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}").nextLine(2)
+
+                append("private static $typeName read${field.className}(DataInput in) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("int size = readLength(in);").nextLine()
+                    append("if (size < 0) {")
+                    withIncreasedIndentation().append("return null;")
+                    append("}").nextLine()
+                    append("$typeName list = new ArrayList<>(Math.min(size, INITIAL_CAPACITY));").nextLine()
+                    append("for (int i = 0; i < size; i++) {")
+                    withIncreasedIndentation().append("list.add(${readExpression(field, type.subtype)});")
+                    append("}").nextLine()
+                    append("return list;")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private inner class MapMethods(private val field: FieldNode, private val type: FreeObjectType) : Renderer {
+        override fun render(writer: TextWriter) {
+            val typeName = field.typeName
+            val elementTypeName = inferFieldTypeName(field.name, type.subtype!!)
+            with(writer) {
+                append("private static void write${field.className}($typeName value, DataOutput out) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("writeVarint(out, value == null ? 0 : value.size() + 1);").nextLine()
+                    append("if (value != null) {")
+                    with(withIncreasedIndentation()) {
+                        append("for (Map.Entry<String, $elementTypeName> entry : value.entrySet()) {")
+                        with(withIncreasedIndentation()) {
+                            append("writeString(out, entry.getKey());").nextLine()
+                            append(writeStatement(field, type.subtype, "entry.getValue()"))
+                        }
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}").nextLine(2)
+
+                append("private static $typeName read${field.className}(DataInput in) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("int size = readLength(in);").nextLine()
+                    append("if (size < 0) {")
+                    withIncreasedIndentation().append("return null;")
+                    append("}").nextLine()
+                    append("$typeName map = new HashMap<>();").nextLine()
+                    append("for (int i = 0; i < size; i++) {")
+                    withIncreasedIndentation().append("map.put(readString(in), ${readExpression(field, type.subtype)});")
+                    append("}").nextLine()
+                    append("return map;")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private inner class VariantMethods(private val field: FieldNode) : Renderer {
+        override fun render(writer: TextWriter) {
+            val baseName = field.className
+            val variants = field.variants.values.map { it.className }
+            with(writer) {
+                append("private static void write${baseName}Base(${baseName}Base value, DataOutput out) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    variants.forEachIndexed { index, variant ->
+                        append("${if (index == 0) "" else " else "}if (value instanceof $variant) {")
+                        with(withIncreasedIndentation()) {
+                            append("writeVarint(out, $index);").nextLine()
+                            append("write$variant(($variant) value, out);")
+                        }
+                        append("}")
+                    }
+                    append(" else {")
+                    withIncreasedIndentation().append("throw new IOException(\"Unknown variant of ${baseName}Base: \" + value);")
+                    append("}")
+                }
+                append("}").nextLine(2)
+
+                append("private static ${baseName}Base read${baseName}Base(DataInput in) throws IOException {")
+                with(withIncreasedIndentation()) {
+                    append("int variant = (int) readVarint(in);").nextLine()
+                    append("switch (variant) {")
+                    with(withIncreasedIndentation()) {
+                        variants.forEachIndexed { index, variant ->
+                            append("case $index:")
+                            withIncreasedIndentation().append("return read$variant(in, new ${variant}Impl());")
+                        }
+                        append("default: {")
+                        withIncreasedIndentation().append("throw new IOException(\"Unknown variant \" + variant + \" of ${baseName}Base\");")
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private class PrimitiveMethods : Renderer {
+        override fun render(writer: TextWriter) {
+            PRIMITIVE_METHODS.trimIndent().lines().forEachIndexed { index, line ->
+                if (index != 0) {
+                    writer.nextLine()
+                }
+                writer.append(line)
+            }
+        }
+    }
+
+    private class CodecObject(
+            val node: ObjectNode,
+            val className: String,
+            val implName: String)
+
+    companion object {
+        private const val MAGIC = 0x43464742
+
+        private const val MAX_LENGTH = 1 shl 20
+
+        private const val INITIAL_CAPACITY = 16
+
+        private const val PRIMITIVE_METHODS = """
+            private static long encodeZigZag(long value) {
+                return (value << 1) ^ (value >> 63);
+            }
+
+            private static long decodeZigZag(long value) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+
+            private static void writeVarint(DataOutput out, long value) throws IOException {
+                while ((value & ~0x7FL) != 0L) {
+                    out.writeByte((int) ((value & 0x7F) | 0x80));
+                    value >>>= 7;
+                }
+                out.writeByte((int) value);
+            }
+
+            private static long readVarint(DataInput in) throws IOException {
+                long result = 0;
+                for (int shift = 0; shift < 64; shift += 7) {
+                    byte b = in.readByte();
+                    result |= (long) (b & 0x7F) << shift;
+                    if ((b & 0x80) == 0) {
+                        return result;
+                    }
+                }
+                throw new IOException("Malformed varint");
+            }
+
+            private static void writeString(DataOutput out, String value) throws IOException {
+                if (value == null) {
+                    writeVarint(out, 0);
+                    return;
+                }
+                byte[] bytes = value.getBytes(UTF_8);
+                writeVarint(out, bytes.length + 1);
+                out.write(bytes);
+            }
+
+            /*
+             * Length of a string or a collection, -1 for null. A corrupt file must not get to allocate it.
+             */
+            private static int readLength(DataInput in) throws IOException {
+                long length = readVarint(in) - 1;
+                if (length < -1 || length > MAX_LENGTH) {
+                    throw new IOException("Malformed length " + length);
+                }
+                return (int) length;
+            }
+
+            private static String readString(DataInput in) throws IOException {
+                int length = readLength(in);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return new String(bytes, UTF_8);
+            }
+            """
+    }
+}
+
+/*
+* 64-bit FNV-1a over a canonical description of the schema: field names, types, validators and whether fields
+* are required. Defaults are left out, unset fields are not stored and pick up the current defaults on read.
+*/
+fun schemaFingerprint(definition: Definition): Long {
+    var hash = -0x340d631b7bdddcdbL
+    schemaSignature(definition).toByteArray(Charsets.UTF_8).forEach {
+        hash = (hash xor (it.toLong() and 0xff)) * 0x100000001b3L
+    }
+    return hash
+}
+
+private fun schemaSignature(definition: Definition): String =
+        definition.fields.joinToString(",", "{", "}") { field ->
+            val validator = when (val validator = field.validator) {
+                null -> ""
+                is SpecialValuesValidator<*> -> "values${validator.values}"
+                is RegexValidator -> "regex${validator.pattern.pattern()}"
+                is RangeValidator -> "range${validator.fromInclusive}..${validator.toInclusive}"
+            }
+            val required = if (field.absenceHandler is RequiredHandler) "!" else ""
+            "${field.name.rawText}:${typeSignature(field.type)}$required$validator"
+        }
+
+private fun typeSignature(type: Type<*>?): String = when (type) {
+    null -> "*"
+    is StringType -> "s"
+    is IntegerType -> "i"
+    is LongType -> "l"
+    is BoolType -> "b"
+    is FreeObjectType -> "m<${typeSignature(type.subtype)}>"
+    is ArrayType<*> -> "a<${typeSignature(type.subtype)}>"
+    is StrictObjectType -> "o${schemaSignature(type.definition)}"
+    is MultiObjectType -> type.types.entries.joinToString(",", "u{", "}") { "${it.key}=${schemaSignature(it.value)}" }
+}
@@ -2,49 +2,52 @@ package ru.mail.condef.renderer
 
 import ru.mail.condef.dsl.*
 
+/*
+* Renders the root class with the given strategy, or a top level object of the SPLIT layout with the names
+* the strategy derives for it.
+*/
 class ConfigCodeRenderer(
-        rootDefinition: Definition,
+        model: SchemaModel,
         strategy: CodeGenerationStrategy,
-        packageName: String) : JavaCodeRenderer(rootDefinition, packageName) {
+        packageName: String,
+        node: ObjectNode = model.root) : JavaCodeRenderer(model, packageName) {
 
-    private val rootInterface = ContentsCodeRenderer(rootDefinition, strategy)
+    private val contents = if (node.isRoot) ContentsCodeRenderer(node, strategy) else strategy.createRendererForObject(node)
 
     override fun render(writer: TextWriter) {
         super.render(writer)
-        writer.append(rootInterface)
+        writer.append(contents)
     }
 
     open class ContentsCodeRenderer(
-            definition: Definition,
+            node: ObjectNode,
             private val codeGeneration: CodeGenerationStrategy) : Renderer {
 
         internal val renderers = mutableListOf<Renderer>()
 
         init {
-            renderers.addAll(codeGeneration.createRendersForFields(definition.fields))
+            renderers.addAll(codeGeneration.createRendersForFields(node.fields))
 
-            val definitionsFromReturnTypes = definition.fields
+            val objectsFromReturnTypes = node.fields
                     .filter { it.type is StrictObjectType }
-                    .map { Pair((it.type as StrictObjectType).definition, it.name.asClassName()) }
+                    .map { it.objectNode!! }
+                    .filter { !it.isTopLevel }
 
-            renderers.addAll(codeGeneration.createRendersForDefinitions(definitionsFromReturnTypes))
+            renderers.addAll(codeGeneration.createRendersForDefinitions(objectsFromReturnTypes))
 
-            val definitionsFromCompositeTypes = definition.fields
-                    .filter { it.type is CompositeType && it.type.subtype is StrictObjectType }
-                    .map { Pair(((it.type as CompositeType).subtype as StrictObjectType).definition, it.name.asClassName()) }
+            val objectsFromCompositeTypes = node.fields
+                    .filter { it.type is CompositeType }
+                    .mapNotNull { it.objectNode }
+                    .filter { !it.isTopLevel }
 
-            renderers.addAll(codeGeneration.createRendersForDefinitions(definitionsFromCompositeTypes))
+            renderers.addAll(codeGeneration.createRendersForDefinitions(objectsFromCompositeTypes))
 
-            var definitionsFromMultiObjectTypes = definition.fields
-                    .filter { it.type is MultiObjectType }
-                    .map { Pair((it.type as MultiObjectType).types, it.name.asClassName()) }
+            val multiObjectFields = (node.fields.filter { it.type is MultiObjectType } +
+                    node.fields.filter { it.type is CompositeType && it.variants.isNotEmpty() })
+                    .filter { field -> field.variants.values.none { it.isTopLevel } }
 
-            definitionsFromMultiObjectTypes += definition.fields
-                    .filter { it.type is CompositeType && it.type.subtype is MultiObjectType }
-                    .map { Pair((((it.type as CompositeType).subtype as MultiObjectType).types), it.name.asClassName()) }
-
-            renderers.addAll(codeGeneration.createRendersForMultiObjectDefinitions(definitionsFromMultiObjectTypes))
-            renderers.add(codeGeneration.createRendererForMerge(definition.fields, codeGeneration.className))
+            renderers.addAll(codeGeneration.createRendersForMultiObjectDefinitions(multiObjectFields))
+            codeGeneration.createRendererForMerge(node.fields, codeGeneration.className)?.let { renderers.add(it) }
         }
 
         override fun render(writer: TextWriter) {
@@ -59,14 +62,40 @@ class ConfigCodeRenderer(
 interface CodeGenerationStrategy {
     val entityHeader: String
     val className: String
-    fun createRendersForFields(fields: List<Field<*>>): Collection<Renderer>
-    fun createRendersForDefinitions(definitions: List<Pair<Definition, String>>): Collection<Renderer>
-    fun createRendersForMultiObjectDefinitions(types: List<Pair<Map<String, Definition>, String>>): Collection<Renderer>
-    fun createRendererForMerge(fields: List<Field<*>>, currentClassType: String) : Renderer
-    fun redefineNames(fieldName: String, superType: String = ""): CodeGenerationStrategy
+    fun createRendersForFields(fields: List<FieldNode>): Collection<Renderer>
+    fun createRendersForDefinitions(objects: List<ObjectNode>): Collection<Renderer>
+    fun createRendersForMultiObjectDefinitions(fields: List<FieldNode>): Collection<Renderer>
+
+    /*
+    * Merge method of the generated class, null when the type does not merge in place.
+    */
+    fun createRendererForMerge(fields: List<FieldNode>, currentClassType: String) : Renderer?
+
+    /*
+    * Class of a nested object or a multi object variant, named after the object.
+    */
+    fun createRendererForObject(node: ObjectNode): Renderer
+}
+
+/*
+* Base interface of the variants of a multi object, a file of its own in the SPLIT layout.
+*/
+class MultiObjectBaseRenderer(
+        model: SchemaModel,
+        private val field: FieldNode,
+        packageName: String) : JavaCodeRenderer(model, packageName) {
+
+    override fun render(writer: TextWriter) {
+        super.render(writer)
+        writer.nextLine()
+        writer.append(InterfaceGenerationStrategy.MultiObjectBaseInterface(field.className, field.variants.keys.toList()))
+    }
 }
 
-class InterfaceGenerationStrategy(private val name: String, private val superType: String = "") : CodeGenerationStrategy {
+class InterfaceGenerationStrategy(
+        private val name: String,
+        private val superType: String = "",
+        private val storage: FieldStorage = FieldStorage.BOXED) : CodeGenerationStrategy {
 
     override val entityHeader: String
         get() = "interface $name" + if (superType.isEmpty()) "" else " extends $superType"
@@ -74,43 +103,43 @@ class InterfaceGenerationStrategy(private val name: String, private val superTyp
     override val className: String
         get() = name
 
-    override fun createRendersForFields(fields: List<Field<*>>): Collection<Renderer> {
-        return fields.map { InterfaceGetterRenderer(it.name, it.type) }
+    override fun createRendersForFields(fields: List<FieldNode>): Collection<Renderer> {
+        return fields.map { InterfaceGetterRenderer(it, storage) }
     }
 
-    override fun createRendersForDefinitions(definitions: List<Pair<Definition, String>>): Collection<Renderer> {
-        return definitions.map { ConfigCodeRenderer.ContentsCodeRenderer(it.first, this.redefineNames(it.second)) }
+    override fun createRendersForDefinitions(objects: List<ObjectNode>): Collection<Renderer> {
+        return objects.map { createRendererForObject(it) }
     }
 
-    override fun redefineNames(fieldName: String, superType: String): CodeGenerationStrategy = InterfaceGenerationStrategy(fieldName, superType)
+    override fun createRendererForObject(node: ObjectNode): Renderer {
+        val superType = if (node.variantKey != null) "${node.parent!!.className}Base" else ""
+        return ConfigCodeRenderer.ContentsCodeRenderer(node, InterfaceGenerationStrategy(node.className, superType, storage))
+    }
 
-    override fun createRendersForMultiObjectDefinitions(types: List<Pair<Map<String, Definition>, String>>)
+    override fun createRendersForMultiObjectDefinitions(fields: List<FieldNode>)
             : Collection<Renderer> {
 
 
-        return types.flatMap {
-            val baseName = it.second.capitalize().toCamelCase()
-            val mapping = it.first
-            listOf(MultiObjectBaseInterface(baseName, mapping.keys.toList())) +
-                    mapping.entries.map {
-                        ConfigCodeRenderer.ContentsCodeRenderer(it.value, redefineNames(
-                                baseName + it.key.capitalize().toCamelCase(), "${baseName}Base"))
-                    }
+        return fields.flatMap { field ->
+            listOf(MultiObjectBaseInterface(field.className, field.variants.keys.toList())) +
+                    field.variants.values.map { createRendererForObject(it) }
         }
     }
 
-    override fun createRendererForMerge(fields: List<Field<*>>, currentClassType: String) : Renderer {
-        return MergeMethodRenderer(fields, currentClassType)
-    }
+    /*
+    * Merging mutates the receiver, so it is declared by the implementations only and not by the interface
+    * the immutable snapshots share.
+    */
+    override fun createRendererForMerge(fields: List<FieldNode>, currentClassType: String) : Renderer? = null
 
-    private data class InterfaceGetterRenderer(val name: Field.Name, val type: Type<*>) : Renderer {
+    private data class InterfaceGetterRenderer(val field: FieldNode, val storage: FieldStorage) : Renderer {
         override fun render(writer: TextWriter) {
-            writer.append("${inferFieldTypeName(name, type)} ${name.asGetterName(type)}();")
-            writer.appendLine("boolean ${name.asGetterName(type)}Set();")
+            writer.append("${field.typeName(storage)} ${field.getterName}();")
+            writer.appendLine("boolean ${field.getterName}Set();")
         }
     }
 
-    private data class MultiObjectBaseInterface(val name: String, val subtypes: List<String>) : Renderer {
+    internal data class MultiObjectBaseInterface(val name: String, val subtypes: List<String>) : Renderer {
         override fun render(writer: TextWriter) {
             with(writer) {
                 append("public interface ${name}Base {")
@@ -137,20 +166,14 @@ class InterfaceGenerationStrategy(private val name: String, private val superTyp
         }
     }
 
-    private data class MergeMethodRenderer(
-            val fields: List<Field<*>>,
-            val name: String) : Renderer {
-
-        override fun render(writer: TextWriter) {
-            writer.append("public void merge($name from);")
-        }
-    }
 }
 
 class ImplementationGenerationStrategy(
         private val interfaceName: String,
         private val implName: String,
-        private val static: Boolean = true) : CodeGenerationStrategy {
+        private val static: Boolean = true,
+        private val storage: FieldStorage = FieldStorage.BOXED,
+        private val lazySubtrees: Boolean = false) : CodeGenerationStrategy {
 
     override val entityHeader: String
         get() = "${if (static) "static " else ""}class $implName implements $interfaceName"
@@ -158,75 +181,69 @@ class ImplementationGenerationStrategy(
     override val className: String
         get() = interfaceName
 
-    override fun createRendersForFields(fields: List<Field<*>>): Collection<Renderer> {
-        return fields.map { FieldRenderer(it.name, it.type, it.absenceHandler!!) } +
-                fields.map { GetterAndSetterRenderer(it.name, it.type) }
+    override fun createRendersForFields(fields: List<FieldNode>): Collection<Renderer> {
+        val presence = PresenceFlags(fields, storage)
+        return fields.map { FieldRenderer(it, it.field.absenceHandler!!, storage, isLazy(it)) } +
+                presence.declarations() +
+                fields.map { GetterAndSetterRenderer(it, storage, presence, isLazy(it)) }
     }
 
-    override fun createRendersForDefinitions(definitions: List<Pair<Definition, String>>): Collection<Renderer> {
-        return definitions.map { ConfigCodeRenderer.ContentsCodeRenderer(it.first, this.redefineNames(it.second)) }
+    override fun createRendersForDefinitions(objects: List<ObjectNode>): Collection<Renderer> {
+        return objects.map { createRendererForObject(it) }
     }
 
-    override fun redefineNames(fieldName: String, superType: String): CodeGenerationStrategy
-            = ImplementationGenerationStrategy(fieldName, fieldName + "Impl")
-
-    override fun createRendersForMultiObjectDefinitions(types: List<Pair<Map<String, Definition>, String>>): Collection<Renderer> {
-        return types.flatMap {
-            val baseName = it.second.capitalize().toCamelCase()
-            val mapping = it.first
-            mapping.entries.map {
-                MultiObjectImplRenderer(it.value, redefineNames(
-                        baseName + it.key.capitalize().toCamelCase()), it.key)
-            }
-        }
+    override fun createRendererForObject(node: ObjectNode): Renderer {
+        val strategy = ImplementationGenerationStrategy(node.className, node.className + "Impl", static = !node.isTopLevel,
+                storage = storage, lazySubtrees = lazySubtrees)
+        return node.variantKey?.let { MultiObjectImplRenderer(node, strategy, it) }
+                ?: ConfigCodeRenderer.ContentsCodeRenderer(node, strategy)
     }
 
-    override fun createRendererForMerge(fields: List<Field<*>>, currentClassType: String) : Renderer {
-        return MergeMethodRenderer(fields, currentClassType)
+    override fun createRendersForMultiObjectDefinitions(fields: List<FieldNode>): Collection<Renderer> {
+        return fields.flatMap { field -> field.variants.values.map { createRendererForObject(it) } }
     }
 
-    private class MultiObjectImplRenderer(rootDefinition: Definition,
-                                          strategy: CodeGenerationStrategy,
-                                          className: String)
-        : ConfigCodeRenderer.ContentsCodeRenderer(rootDefinition, strategy) {
-
-        init {
-            renderers.add(VisitorMethodRenderer(className))
-        }
-
-        class VisitorMethodRenderer(private val className: String) : Renderer {
+    override fun createRendererForMerge(fields: List<FieldNode>, currentClassType: String) : Renderer {
+        val presence = PresenceFlags(fields, storage)
+        val merge = MergeMethodRenderer(fields, currentClassType, presence, fields.filter { isLazy(it) })
+        val copyOf = CopyOfRenderer(fields, currentClassType, implName, presence)
+        return object : Renderer {
             override fun render(writer: TextWriter) {
-                with(writer) {
-                    append("@Override").nextLine()
-                    append("public <T> T accept(Visitor<T> visitor) {")
-                    with(withIncreasedIndentation()) {
-                        append("return visitor.on${className.toCamelCase()}(this);")
-                    }
-                    append("}")
-                }
+                writer.join(listOf(copyOf, merge)) { nextLine(2) }
             }
         }
     }
 
+    private fun isLazy(field: FieldNode) = lazySubtrees && field.lazySubtree
 
     private data class FieldRenderer(
-            private val name: Field.Name,
-            private val type: Type<*>,
-            private val absenceHandler: AbsenceHandler) : Renderer {
+            private val field: FieldNode,
+            private val absenceHandler: AbsenceHandler,
+            private val storage: FieldStorage,
+            private val lazy: Boolean) : Renderer {
+
+        private val type: Type<*>
+            get() = this.field.type
 
         private var internalWriter = TextWriter()
 
         override fun render(writer: TextWriter) {
             internalWriter = writer.newWriter()
             val inferredDefault = inferDefault()
-            val baseLine = "private ${inferFieldTypeName(name, type)} m${name.asClassName()}"
+            val baseLine = "private ${field.typeName(storage)} m${field.className}"
             if (inferredDefault != null) {
                 writer.append("$baseLine = $inferredDefault;")
             } else {
                 writer.append("$baseLine;")
             }
-            writer.nextLine()
-            writer.append("private boolean m${name.asClassName()}Set = false;")
+            if (storage == FieldStorage.BOXED) {
+                writer.nextLine()
+                writer.append("private boolean m${field.className}Set = false;")
+            }
+            if (lazy) {
+                writer.nextLine()
+                writer.append("private LazySubtree<? extends ${field.typeName}> m${field.className}Lazy;")
+            }
         }
 
         private fun inferDefault(): String? = when (absenceHandler) {
@@ -256,18 +273,17 @@ class ImplementationGenerationStrategy(
 
                 if (!defaultValue.isEmpty()) {
                     if (type.subtype!! is StrictObjectType) {
-                        initialValue = "new HashMap<String, ${inferFieldTypeName(name, type.subtype)}>() {{"
+                        initialValue = "new HashMap<String, ${inferFieldTypeName(field.name, type.subtype)}>() {{"
 
                         val writer = internalWriter.withIncreasedIndentation()
-                        val definition = (type.subtype as StrictObjectType).definition
 
-                        writer.append("${name.asClassName()}Impl toFill = null;").nextLine()
+                        writer.append("${field.className}Impl toFill = null;").nextLine()
 
                         for (pair in defaultValue) {
-                            writer.append("toFill = new ${name.asClassName()}Impl();").nextLine()
-                            for (field in definition.fields) {
-                                val arg = inferDefaultValue(field.type, (pair.value as Map<*, *>)[field.name.rawText])
-                                writer.append("toFill.${field.name.asSetterName()}($arg);").nextLine()
+                            writer.append("toFill = new ${field.className}Impl();").nextLine()
+                            for (element in field.objectNode!!.fields) {
+                                val arg = inferDefaultValue(element.type, (pair.value as Map<*, *>)[element.jsonName])
+                                writer.append("toFill.${element.setterName}($arg);").nextLine()
                             }
 
                             writer.append("put(\"${pair.key.toString()}\", toFill);").nextLine(2)
@@ -281,7 +297,7 @@ class ImplementationGenerationStrategy(
         }
 
         private fun inferStrictObjectDefaultValue(defaultValue: Any?): String = when (defaultValue) {
-            is EmptyObject -> "new ${name.asClassName()}Impl()"
+            is EmptyObject -> "new ${field.className}Impl()"
             null -> "null"
             else -> throw IllegalStateException()
         }
@@ -295,53 +311,188 @@ class ImplementationGenerationStrategy(
     }
 
     private data class GetterAndSetterRenderer(
-            private val name: Field.Name,
-            private val type: Type<*>) : Renderer {
+            private val field: FieldNode,
+            private val storage: FieldStorage,
+            private val presence: PresenceFlags,
+            private val lazy: Boolean) : Renderer {
 
         override fun render(writer: TextWriter) {
+            val typeName = field.typeName(storage)
+            val className = field.className
+            val fieldName = field.fieldName
 
             writer.append("@Override").nextLine()
-            writer.append("public ${inferFieldTypeName(name, type)} ${name.asGetterName(type)}() {")
-            writer.withIncreasedIndentation().append("return m${name.asClassName()};")
+            writer.append("public $typeName ${field.getterName}() {")
+            with(writer.withIncreasedIndentation()) {
+                if (lazy) {
+                    append("LazySubtree<? extends $typeName> lazy = m${className}Lazy;").nextLine()
+                    append("return lazy != null ? lazy.get() : m$className;")
+                } else {
+                    append("return m$className;")
+                }
+            }
             writer.append("}").nextLine(2)
 
             writer.append("@Override").nextLine()
-            writer.append("public boolean ${name.asGetterName(type)}Set() {")
-            writer.withIncreasedIndentation().append("return m${name.asClassName()}Set;")
+            writer.append("public boolean ${field.getterName}Set() {")
+            writer.withIncreasedIndentation().append("return ${presence.isSet(field)};")
             writer.append("}").nextLine(2)
 
-            writer.append("public void ${name.asSetterName()}(${inferFieldTypeName(name, type)} ${name.asFieldName()}) {")
+            writer.append("public void ${field.setterName}($typeName $fieldName) {")
             with(writer.withIncreasedIndentation()) {
-                append("m${name.asClassName()}Set = true;").nextLine()
-                append("m${name.asClassName()} = ${name.asFieldName()};")
+                append("${presence.markSet(field)};").nextLine()
+                if (lazy) {
+                    append("m${className}Lazy = null;").nextLine()
+                }
+                append("m$className = $fieldName;")
             }
             writer.append("}")
+            if (lazy) {
+                writer.nextLine(2)
+                writer.append("public void ${field.setterName}Lazy(LazySubtree<? extends $typeName> $fieldName) {")
+                with(writer.withIncreasedIndentation()) {
+                    append("${presence.markSet(field)};").nextLine()
+                    append("m${className}Lazy = $fieldName;")
+                }
+                writer.append("}")
+            }
         }
     }
 
     private data class MergeMethodRenderer(
-            val fields: List<Field<*>>,
-            val name: String) : Renderer {
+            val fields: List<FieldNode>,
+            val name: String,
+            val presence: PresenceFlags,
+            val lazyFields: List<FieldNode>) : Renderer {
 
         override fun render(writer: TextWriter) {
-            writer.append("@Override").nextLine()
             writer.append("public void merge($name from) {")
-            writer.nextLine()
-            for (field in fields) {
-                with(writer.withIncreasedIndentation()) {
+            with(writer.withIncreasedIndentation()) {
+                append("if (from == null) {")
+                withIncreasedIndentation().append("return;")
+                append("}")
+                for (field in fields) {
+                    nextLine()
                     if (field.type is StrictObjectType) {
-                        writer.append("m${field.name.asClassName()}.merge(from.${field.name.asGetterName(field.type)}());")
+                        /* a nested value set from outside, e.g. a snapshot, is copied to be merged into */
+                        val className = field.className
+                        val implName = "${field.objectNode!!.className}Impl"
+                        val target = if (field in lazyFields) "${field.getterName}()" else "m$className"
+                        append("$implName merged$className = $implName.copyOf($target);").nextLine()
+                        append("if (merged$className != null) {")
+                        with(withIncreasedIndentation()) {
+                            append("merged$className.merge(from.${field.getterName}());").nextLine()
+                            if (field in lazyFields) {
+                                append("m${className}Lazy = null;").nextLine()
+                            }
+                            append("m$className = merged$className;")
+                        }
+                        append("}")
                     } else {
-                        writer.append("if(!m${field.name.asClassName()}Set && from.${field.name.asGetterName(field.type)}Set()) {")
-                        writer.append("${field.name.asSetterName()}(from.${field.name.asGetterName(field.type)}());")
-                        writer.append("}")
+                        append("if (!${presence.isSet(field)} && from.${field.getterName}Set()) {")
+                        withIncreasedIndentation().append("${field.setterName}(from.${field.getterName}());")
+                        append("}")
                     }
                 }
             }
-            writer.append("}").nextLine()
+            writer.append("}")
+        }
+    }
+}
+
+/*
+* Mutable copy of any implementation of the interface, keeping which fields are set. Nested objects are shared
+* with the source, merge copies them in turn before it changes them.
+*/
+private class CopyOfRenderer(
+        private val fields: List<FieldNode>,
+        private val interfaceName: String,
+        private val implName: String,
+        private val presence: PresenceFlags) : Renderer {
+
+    override fun render(writer: TextWriter) {
+        writer.append("public static $implName copyOf($interfaceName source) {")
+        with(writer.withIncreasedIndentation()) {
+            append("if (source == null || source instanceof $implName) {")
+            withIncreasedIndentation().append("return ($implName) source;")
+            append("}").nextLine()
+            append("$implName copy = new $implName();").nextLine()
+            fields.forEach { field ->
+                append("copy.m${field.className} = source.${field.getterName}();").nextLine()
+                append("if (source.${field.getterName}Set()) {")
+                withIncreasedIndentation().append("copy.${presence.markSet(field)};")
+                append("}").nextLine()
+            }
+            append("return copy;")
         }
+        writer.append("}")
     }
 }
 
+internal class MultiObjectImplRenderer(node: ObjectNode,
+                                       strategy: CodeGenerationStrategy,
+                                       className: String)
+    : ConfigCodeRenderer.ContentsCodeRenderer(node, strategy) {
 
+    init {
+        renderers.add(VisitorMethodRenderer(className))
+    }
 
+    class VisitorMethodRenderer(private val className: String) : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("@Override").nextLine()
+                append("public <T> T accept(Visitor<T> visitor) {")
+                with(withIncreasedIndentation()) {
+                    append("return visitor.on${className.toCamelCase()}(this);")
+                }
+                append("}")
+            }
+        }
+    }
+}
+
+/*
+* How generated implementations store scalar fields and their "Set" flags. BOXED keeps wrapper types and
+* a boolean per field, PACKED stores ints, longs and booleans unboxed and packs the flags into long words.
+*/
+enum class FieldStorage { BOXED, PACKED }
+
+/*
+* "Set" flags of the fields of one generated class, indexed by field ordinal.
+*/
+internal class PresenceFlags(private val fields: List<FieldNode>, private val storage: FieldStorage) {
+
+    fun declarations(modifiers: String = "private"): List<Renderer> = when {
+        storage == FieldStorage.BOXED || fields.isEmpty() -> emptyList()
+        else -> listOf(object : Renderer {
+            override fun render(writer: TextWriter) {
+                for (word in 0 until (fields.size + 63) / 64) {
+                    if (word != 0) {
+                        writer.nextLine()
+                    }
+                    writer.append("$modifiers long ${wordName(word)};")
+                }
+            }
+        })
+    }
+
+    fun isSet(field: FieldNode): String = when (storage) {
+        FieldStorage.BOXED -> "m${field.className}Set"
+        FieldStorage.PACKED -> "((${wordName(field.ordinal / 64)} & ${maskOf(field)}) != 0L)"
+    }
+
+    fun markSet(field: FieldNode): String = when (storage) {
+        FieldStorage.BOXED -> "m${field.className}Set = true"
+        FieldStorage.PACKED -> "${wordName(field.ordinal / 64)} |= ${maskOf(field)}"
+    }
+
+    fun copyStatements(source: String): List<String> = when (storage) {
+        FieldStorage.BOXED -> fields.map { "m${it.className}Set = $source.m${it.className}Set;" }
+        FieldStorage.PACKED -> (0 until (fields.size + 63) / 64).map { "${wordName(it)} = $source.${wordName(it)};" }
+    }
+
+    private fun maskOf(field: FieldNode) = "0x${java.lang.Long.toHexString(1L shl (field.ordinal % 64))}L"
+
+    private fun wordName(word: Int) = "mSetBits$word"
+}
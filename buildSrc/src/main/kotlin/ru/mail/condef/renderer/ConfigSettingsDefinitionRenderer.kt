@@ -2,45 +2,172 @@ package ru.mail.condef.renderer
 
 import ru.mail.condef.dsl.*
 
+/*
+* Objects whose fields do not fit the method budget are created by methods of their own, objects with
+* too many fields for one method fill their field array in chunks. Every field the mapper fills is also
+* stored in the holder as it is created, the mapper reaches it from there.
+*/
 class ConfigSettingsDefinitionRenderer(
-    rootDefinition: Definition,
-    packageName: String
-) : JavaCodeRenderer(rootDefinition, packageName) {
+    model: SchemaModel,
+    packageName: String,
+    private val budget: MethodBudget = MethodBudget(),
+    private val className: String = "ConfigSettingsDefinition"
+) : JavaCodeRenderer(model, packageName) {
+
+    private val holder = SettingsFieldHolder(model)
+
+    private val objectBytes = HashMap<ObjectNode, Int>()
+
+    private val methodNames = HashMap<ObjectNode, String>()
 
     override fun listDependencies(): List<String> =
-        super.listDependencies() + listOf("ru.mail.flexsettings.field.Field")
+        super.listDependencies() + listOf("Field", "StringField", "BooleanField", "IntegerField", "LongField",
+                "StrictObjectField", "FreeObjectField").map { "ru.mail.flexsettings.field.$it" }
 
     override fun render(writer: TextWriter) {
         super.render(writer)
 
-        writer.codeBlock("public class ConfigSettingsDefinition") {
+        val extracted = model.objects.filter { !it.isRoot && isExtracted(it) }
+        extracted.forEach { methodName(it) }
+        writer.codeBlock("public class $className") {
+            renderHolder()
+            nextLine()
             codeBlock("public static Field create()") {
-                append("return Field.strictObject(\"base\",")
-                renderDefinition(this, definition)
+                append("return createFields().${SettingsFieldHolder.ROOT_NAME};")
+            }
+            nextLine()
+            codeBlock("public static ${SettingsFieldHolder.CLASS_NAME} createFields()") {
+                append("${SettingsFieldHolder.CLASS_NAME} $HOLDER = new ${SettingsFieldHolder.CLASS_NAME}();")
+                appendLine("$HOLDER.${SettingsFieldHolder.ROOT_NAME} = create($HOLDER);")
+                appendLine("return $HOLDER;")
+            }
+            nextLine()
+            renderCreateMethod("private static StrictObjectField create($HOLDER_PARAMETER)", "base", model.root)
+            extracted.forEach {
+                nextLine()
+                renderCreateMethod("private static StrictObjectField ${methodName(it)}($HOLDER_PARAMETER)", key(it), it)
+            }
+        }
+    }
+
+    private fun TextWriter.renderHolder() {
+        codeBlock("public static class ${SettingsFieldHolder.CLASS_NAME}") {
+            append("public StrictObjectField ${SettingsFieldHolder.ROOT_NAME};")
+            holder.fields.forEach {
+                appendLine("public ${holder.typeName(it)} ${holder.name(it)};")
+            }
+        }
+    }
+
+    private fun TextWriter.renderCreateMethod(header: String, key: String, node: ObjectNode) {
+        if (budget.fits(objectBytes(node))) {
+            codeBlock(header) {
+                append("return Field.strictObject(\"$key\",")
+                renderObject(this, node)
                 append(");")
             }
+            return
+        }
+        val chunks = budget.chunks(node.fields) { fieldBytes(it) }
+        val chunkName = "${methodName(node)}Fields"
+        codeBlock(header) {
+            append("Field[] fields = new Field[${node.fields.size}];")
+            chunks.indices.forEach {
+                appendLine("$chunkName$it(fields, $HOLDER);")
+            }
+            appendLine("return Field.strictObject(\"$key\", fields);")
+        }
+        chunks.forEachIndexed { i, chunk ->
+            nextLine()
+            codeBlock("private static void $chunkName$i(Field[] fields, $HOLDER_PARAMETER)") {
+                chunk.forEach { field ->
+                    if (field != chunk.first()) {
+                        nextLine()
+                    }
+                    append("fields[${field.ordinal}] = ")
+                    renderField(field)
+                    append(";")
+                }
+            }
         }
     }
 
-    private fun renderDefinition(writer: TextWriter, definition: Definition) {
+    private fun renderObject(writer: TextWriter, node: ObjectNode) {
         with(writer.withIncreasedIndentation()) {
-            definition.fields.forEachIndexed { index, field ->
-                if (index != 0) {
+            node.fields.forEach { field ->
+                if (field.ordinal != 0) {
                     append(",").nextLine()
                 }
-                renderType(field.key(), field.type)
+                renderField(field)
             }
         }
     }
 
-    private fun TextWriter.renderType(key: String, type: Type<*>) {
+    private fun isExtracted(node: ObjectNode): Boolean = !node.isRoot && !budget.fits(objectBytes(node))
+
+    /*
+    * Estimated bytecode of creating an object inline: its field array and the fields themselves.
+    */
+    private fun objectBytes(node: ObjectNode): Int = objectBytes.getOrPut(node) {
+        OBJECT_BYTES + node.fields.sumBy { fieldBytes(it) }
+    }
+
+    private fun fieldBytes(field: FieldNode): Int = FIELD_BYTES + when (field.type) {
+        is StrictObjectType -> objectReferenceBytes(field.objectNode!!)
+        is FreeObjectType -> field.objectNode?.let { FIELD_BYTES + objectReferenceBytes(it) } ?: FIELD_BYTES
+        else -> 0
+    } + (if (field.field.description.isEmpty()) 0 else DESCRIPTION_BYTES) + (if (isRequired(field)) CALL_BYTES else 0) +
+            (if (holder.contains(field)) HOLDER_BYTES else 0)
+
+    private fun objectReferenceBytes(node: ObjectNode): Int = if (isExtracted(node)) CALL_BYTES + HOLDER_BYTES else objectBytes(node)
+
+    private fun key(node: ObjectNode): String = if (node.parent!!.type is FreeObjectType) "" else node.parent.jsonName
+
+    private fun methodName(node: ObjectNode): String = if (node.isRoot) "create" else methodNames.getOrPut(node) {
+        val baseName = methodName(node.parent!!.owner) + node.className
+        var name = baseName
+        var index = 2
+        while (methodNames.containsValue(name)) {
+            name = "$baseName${index++}"
+        }
+        name
+    }
+
+    /*
+    * Descriptions of the DSL are kept in the settings tree, the settings screen searches them. Required fields
+    * are saved with every object holding changed settings, the parser rejects the object without them.
+    */
+    private fun TextWriter.renderField(field: FieldNode) {
+        val calls = StringBuilder()
+        if (field.field.description.isNotEmpty()) {
+            calls.append(".withDescription(\"${StringEscapeUtils.escapeJava(field.field.description)}\")")
+        }
+        if (isRequired(field)) {
+            calls.append(".required()")
+        }
+        if (!holder.contains(field)) {
+            renderType(field.jsonName, field.type, field.objectNode)
+        } else if (calls.isEmpty()) {
+            append("$HOLDER.${holder.name(field)} = ")
+            renderType(field.jsonName, field.type, field.objectNode)
+        } else {
+            append("($HOLDER.${holder.name(field)} = ")
+            renderType(field.jsonName, field.type, field.objectNode)
+            append(")")
+        }
+        append(calls.toString())
+    }
+
+    private fun isRequired(field: FieldNode): Boolean = field.field.absenceHandler is RequiredHandler
+
+    private fun TextWriter.renderType(key: String, type: Type<*>, node: ObjectNode?) {
         when (type) {
             is StringType -> renderStringField(key)
             is BoolType -> renderBooleanField(key)
             is IntegerType -> renderIntegerField(key)
             is LongType -> renderLongField(key)
-            is StrictObjectType -> renderStrictObjectField(key, type)
-            is FreeObjectType -> renderFreeObjectField(key, type)
+            is StrictObjectType -> renderStrictObjectField(key, node!!)
+            is FreeObjectType -> renderFreeObjectField(key, type, node)
             else -> renderUnsupported(key, type)
         }
     }
@@ -65,16 +192,20 @@ class ConfigSettingsDefinitionRenderer(
         append("Field.$type(\"$key\")")
     }
 
-    private fun TextWriter.renderStrictObjectField(key: String, type: StrictObjectType) {
+    private fun TextWriter.renderStrictObjectField(key: String, node: ObjectNode) {
+        if (isExtracted(node)) {
+            append("${methodName(node)}($HOLDER)")
+            return
+        }
         append("Field.strictObject(\"$key\",")
-        renderDefinition(this, type.definition)
+        renderObject(this, node)
         append(")")
     }
 
-    private fun TextWriter.renderFreeObjectField(key: String, type: FreeObjectType) {
+    private fun TextWriter.renderFreeObjectField(key: String, type: FreeObjectType, node: ObjectNode?) {
         append("Field.freeObject(\"$key\",")
         with(withIncreasedIndentation()) {
-            renderType("", type.subtype!!)
+            renderType("", type.subtype!!, node)
         }
         append(")")
     }
@@ -91,5 +222,19 @@ class ConfigSettingsDefinitionRenderer(
         append("}")
     }
 
-    private fun Field<*>.key() = name.rawText
+    companion object {
+        private const val FIELD_BYTES = 12
+
+        private const val OBJECT_BYTES = 16
+
+        private const val CALL_BYTES = 3
+
+        private const val DESCRIPTION_BYTES = 6
+
+        private const val HOLDER_BYTES = 5
+
+        private const val HOLDER = SettingsFieldHolder.PARAMETER_NAME
+
+        private const val HOLDER_PARAMETER = "${SettingsFieldHolder.CLASS_NAME} $HOLDER"
+    }
 }
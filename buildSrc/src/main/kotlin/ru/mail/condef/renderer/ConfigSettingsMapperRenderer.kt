@@ -1,49 +1,127 @@
 package ru.mail.condef.renderer
 
 import ru.mail.condef.dsl.*
+import java.util.*
 
+/*
+* Objects whose fields do not fit the method budget are mapped by methods of their own, objects with
+* too many fields for one method are mapped in chunks. Settings fields are reached through the holder filled
+* by the settings definition, so mapping does no lookups by name and no casts.
+*/
 class ConfigSettingsMapperRenderer(
-    rootDefinition: Definition,
-    packageName: String
-) : JavaCodeRenderer(rootDefinition, packageName) {
+    model: SchemaModel,
+    packageName: String,
+    private val budget: MethodBudget = MethodBudget(),
+    private val definitionClassName: String = "ConfigSettingsDefinition"
+) : JavaCodeRenderer(model, packageName) {
+
+    private val holder = SettingsFieldHolder(model)
+
+    private class MapMethod(val name: String, val className: String, val objectName: String, val node: ObjectNode)
+
+    private val bodyBytes = HashMap<ObjectNode, Int>()
+
+    private val methodNames = mutableSetOf<String>()
+
+    private val pendingMethods = ArrayDeque<MapMethod>()
 
     override fun listDependencies(): List<String> =
-        super.listDependencies() + listOf("Field", "StrictObjectField", "FreeObjectField").map { "ru.mail.flexsettings.field.$it" }
+        super.listDependencies() + listOf("ru.mail.flexsettings.field.Field")
 
     override fun render(writer: TextWriter) {
         super.render(writer)
 
+        methodNames.clear()
+        methodNames.add("map")
         writer.codeBlock("public class ConfigSettingsMapper") {
-            codeBlock("public static void map(StrictObjectField configurationField, DTOConfiguration configuration, DTOConfiguration configurationState)") {
-                initDefinition("DTOConfiguration", "configuration", definition)
+            renderMapMethod("public", MapMethod("map", "DTOConfiguration", "configuration", model.root))
+            while (pendingMethods.isNotEmpty()) {
+                nextLine()
+                renderMapMethod("private", pendingMethods.removeFirst())
             }
         }
     }
 
-    private fun TextWriter.initPrimitive(parentObjectName : String, type : String, field : Field<*>) {
-        val fieldGetter = "${parentObjectName}Field.getField(\"${field.key()}\")"
-        appendLine("$fieldGetter.as${type.capitalize()}().setValue($parentObjectName.${field.getterName()}());")
-        appendLine("$fieldGetter.setChanged(${parentObjectName}State.${field.getterName()}Set());")
+    private fun TextWriter.renderMapMethod(privacy: String, method: MapMethod) {
+        val header = "$privacy static void ${method.name}${parameters(method.className, method.objectName)}"
+        if (budget.fits(bodyBytes(method.node))) {
+            codeBlock(header) {
+                initObject(method.className, method.objectName, method.node.fields)
+            }
+            return
+        }
+        val chunks = budget.chunks(method.node.fields) { fieldBytes(it) }
+        codeBlock(header) {
+            chunks.indices.forEach {
+                appendLine("${method.name}Fields$it${arguments(method.objectName)};")
+            }
+        }
+        chunks.forEachIndexed { i, chunk ->
+            nextLine()
+            codeBlock("private static void ${method.name}Fields$i${parameters(method.className, method.objectName)}") {
+                initObject(method.className, method.objectName, chunk)
+            }
+        }
     }
 
-    private fun TextWriter.initStrictObject(parentClassName: String, parentObjectName: String, field: Field<*>) {
-        val className = "$parentClassName.${field.name.asClassName()}"
-        val objectName = field.name.asFieldName()
-        val fieldName = objectName + "Field"
+    private fun parameters(className: String, objectName: String) =
+            "($definitionClassName.${SettingsFieldHolder.CLASS_NAME} $HOLDER, $className $objectName, $className ${objectName}State)"
+
+    private fun arguments(objectName: String) = "($HOLDER, $objectName, ${objectName}State)"
+
+    private fun isExtracted(node: ObjectNode): Boolean = !node.isRoot && !budget.fits(bodyBytes(node))
+
+    /*
+    * Estimated bytecode of mapping the fields of an object inline.
+    */
+    private fun bodyBytes(node: ObjectNode): Int = bodyBytes.getOrPut(node) { node.fields.sumBy { fieldBytes(it) } }
+
+    private fun fieldBytes(field: FieldNode): Int = when (field.type) {
+        is StringType, is BoolType, is IntegerType, is LongType -> PRIMITIVE_BYTES
+        is StrictObjectType -> OBJECT_BYTES + field.objectNode!!.let { if (isExtracted(it)) CALL_BYTES else bodyBytes(it) }
+        is FreeObjectType -> FREE_OBJECT_BYTES
+        else -> 0
+    }
+
+    private fun methodName(field: FieldNode): String {
+        val baseName = "map${field.className}"
+        var name = baseName
+        var index = 2
+        while (!methodNames.add(name)) {
+            name = "$baseName${index++}"
+        }
+        return name
+    }
+
+    private fun TextWriter.initPrimitive(parentObjectName : String, field : FieldNode) {
+        val settingsField = "$HOLDER.${holder.name(field)}"
+        appendLine("$settingsField.setValue($parentObjectName.${field.getterName}());")
+        appendLine("$settingsField.setChanged(${parentObjectName}State.${field.getterName}Set());")
+    }
+
+    private fun TextWriter.initStrictObject(parentClassName: String, parentObjectName: String, field: FieldNode) {
+        val className = nestedClassName(parentClassName, field)
+        val objectName = field.fieldName
 
         nextLine()
-        appendLine("StrictObjectField $fieldName = ${parentObjectName}Field.getField(\"${field.key()}\").asStrictObject();")
-        appendLine("$className $objectName = $parentObjectName.${field.getterName()}();")
-        appendLine("$className ${objectName}State = ${parentObjectName}State.${field.getterName()}();")
-        appendLine("$fieldName.setChanged(${parentObjectName}State.${field.getterName()}Set());")
+        appendLine("$className $objectName = $parentObjectName.${field.getterName}();")
+        appendLine("$className ${objectName}State = ${parentObjectName}State.${field.getterName}();")
+        appendLine("$HOLDER.${holder.name(field)}.setChanged(${parentObjectName}State.${field.getterName}Set());")
 
-        initDefinition(className, objectName, (field.type as StrictObjectType).definition)
+        val node = field.objectNode!!
+        if (isExtracted(node)) {
+            val method = MapMethod(methodName(field), className, objectName, node)
+            pendingMethods.add(method)
+            appendLine("${method.name}${arguments(objectName)};")
+        } else {
+            initObject(className, objectName, node.fields)
+        }
     }
 
-    private fun TextWriter.initFreeObject(parentClassName: String, parentObjectName: String, field: Field<*>) {
-        val className = "$parentClassName.${field.name.asClassName()}"
-        val objectName = field.name.asFieldName()
-        val fieldName = objectName + "Field"
+    private fun TextWriter.initFreeObject(parentClassName: String, parentObjectName: String, field: FieldNode) {
+        val className = nestedClassName(parentClassName, field)
+        val objectName = field.fieldName
+        val settingsField = "$HOLDER.${holder.name(field)}"
         val type = field.type as FreeObjectType
         val mapClass = when (type.subtype) {
             is StringType -> "String"
@@ -51,35 +129,35 @@ class ConfigSettingsMapperRenderer(
             else -> "Void"
         }
 
-        appendLine("FreeObjectField $fieldName = ${parentObjectName}Field.getField(\"${field.key()}\").asFreeObject();")
-        appendLine("$fieldName.setChanged(${parentObjectName}State.${field.getterName()}Set());")
-        appendLine("Map<String, $mapClass> $objectName = $parentObjectName.${field.getterName()}();")
+        appendLine("$settingsField.setChanged(${parentObjectName}State.${field.getterName}Set());")
+        appendLine("Map<String, $mapClass> $objectName = $parentObjectName.${field.getterName}();")
         appendLine("for (Map.Entry<String, $mapClass> entry : $objectName.entrySet()) {")
         with(withIncreasedIndentation()) {
             if (type.subtype is StringType) {
-                append("$fieldName.addField(entry.getKey()).asString().setValue(entry.getValue());")
-                appendLine("$fieldName.getField(entry.getKey()).setChanged($fieldName.isChanged());")
+                append("Field entryField = $settingsField.addField(entry.getKey());")
+                appendLine("entryField.asString().setValue(entry.getValue());")
+                appendLine("entryField.setChanged($settingsField.isChanged());")
             } else {
-                append("// TODO add support of ${type.subtype}")
+                append("// TODO add support of ${type.subtype?.javaClass?.name}")
             }
         }
         append("}")
     }
 
-    private fun TextWriter.initDefinition(parentClassName: String, parentObjectName: String, definition: Definition) {
-        definition.fields.forEach {
+    private fun TextWriter.initObject(parentClassName: String, parentObjectName: String, fields: List<FieldNode>) {
+        fields.forEach {
             when (it.type) {
-                is StringType -> initPrimitive(parentObjectName, "string", it)
-                is BoolType -> initPrimitive(parentObjectName, "boolean", it)
-                is IntegerType -> initPrimitive(parentObjectName, "integer", it)
-                is LongType -> initPrimitive(parentObjectName, "long", it)
+                is StringType, is BoolType, is IntegerType, is LongType -> initPrimitive(parentObjectName, it)
                 is StrictObjectType -> initStrictObject(parentClassName, parentObjectName, it)
                 is FreeObjectType -> initFreeObject(parentClassName, parentObjectName, it)
-                else -> appendLine("// ${it.name.asFieldName()} - ${it.type}")
+                else -> appendLine("// ${it.fieldName} - ${it.type.javaClass.name}")
             }
         }
     }
 
+    private fun nestedClassName(parentClassName: String, field: FieldNode): String =
+            field.objectNode?.takeIf { it.isTopLevel }?.className ?: "$parentClassName.${field.className}"
+
     private fun TextWriter.codeBlock(header: String, block: TextWriter.() -> Unit) {
         appendLine("$header {")
         with(withIncreasedIndentation()) {
@@ -88,6 +166,15 @@ class ConfigSettingsMapperRenderer(
         append("}")
     }
 
-    private fun Field<*>.key() = name.rawText
-    private fun Field<*>.getterName() = name.asGetterName(type)
+    companion object {
+        private const val PRIMITIVE_BYTES = 30
+
+        private const val OBJECT_BYTES = 30
+
+        private const val FREE_OBJECT_BYTES = 90
+
+        private const val CALL_BYTES = 10
+
+        private const val HOLDER = SettingsFieldHolder.PARAMETER_NAME
+    }
 }
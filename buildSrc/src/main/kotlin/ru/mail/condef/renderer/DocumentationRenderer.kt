@@ -2,7 +2,7 @@ package ru.mail.condef.renderer
 
 import ru.mail.condef.dsl.*
 
-class DocumentationRenderer(private val definition: Definition, private val version: String) : Renderer {
+class DocumentationRenderer(private val model: SchemaModel, private val version: String) : Renderer {
 
     override fun render(writer: TextWriter) {
         with(writer) {
@@ -48,7 +48,7 @@ class DocumentationRenderer(private val definition: Definition, private val vers
                                 }
                             }
                         }
-                        traverse(definition, this, emptyList())
+                        traverse(model.root, this, emptyList())
                     }
                 }
             }
@@ -68,23 +68,16 @@ class DocumentationRenderer(private val definition: Definition, private val vers
     }
 
 
-    private fun traverse(definition: Definition, table: Table, fieldPath: List<Field<*>>) {
-        definition.fields
+    private fun traverse(node: ObjectNode, table: Table, fieldPath: List<Field<*>>) {
+        node.fields
                 .forEach {
-                    val currentPath = fieldPath + it
+                    val currentPath = fieldPath + it.field
                     renderTableRow(currentPath, table)
-                    if (it.type is StrictObjectType) {
-                        traverse(it.type.definition, table, currentPath)
-                    } else if (it.type is CompositeType) {
-                        when (it.type.subtype) {
-                            is StrictObjectType ->
-                                traverse((it.type.subtype as StrictObjectType).definition, table, currentPath)
-                            is MultiObjectType -> (it.type.subtype as MultiObjectType).types.forEach { type ->
-                                val multiObjectPath = currentPath + Field(Field.Name(type.key), it.type.subtype as MultiObjectType, SubstituteWithDefaultHandler(EmptyObject))
-                                renderTableRow(multiObjectPath, table)
-                                traverse(type.value, table, multiObjectPath)
-                            }
-                        }
+                    it.objectNode?.let { child -> traverse(child, table, currentPath) }
+                    it.variants.forEach { (key, variant) ->
+                        val multiObjectPath = currentPath + Field(Field.Name(key), (it.type as ArrayType<*>).subtype, SubstituteWithDefaultHandler(EmptyObject))
+                        renderTableRow(multiObjectPath, table)
+                        traverse(variant, table, multiObjectPath)
                     }
                 }
     }
@@ -174,28 +167,46 @@ class DocumentationRenderer(private val definition: Definition, private val vers
                 .joinToString(prefix = "{", postfix = "}")
     }
 
+    /*
+    * Every level of the path opens a JSON object around the next one, its template marks the place of the nested
+    * level with %s. Openings are appended in order and closings in reverse, instead of formatting the whole
+    * example again for each level.
+    */
     private fun getJsonExample(path: List<Field<*>>): String {
-        var json = "{\n%s\n}"
+        val json = StringBuilder("{\n")
+        val closings = mutableListOf("\n}")
         path.forEachIndexed { i, field ->
-            json = json.format(when (field.type) {
-                is StrictObjectType -> "${indent(i)}\"${field.name.asJsonFieldName()}\" : {\n%s\n${indent(i)}}"
+            val template = getJsonExampleTemplate(path, field, i)
+            val hole = template.indexOf("%s")
+            if (hole < 0) {
+                json.append(template)
+                closings.asReversed().forEach { json.append(it) }
+                return json.toString()
+            }
+            json.append(template, 0, hole)
+            closings.add(template.substring(hole + 2))
+        }
+        json.append("${indent(path.lastIndex + 1)}&lt;object&gt;")
+        closings.asReversed().forEach { json.append(it) }
+        return json.toString()
+    }
 
-                is MultiObjectType -> if (field == path.last()) getExampleJsonValue(field, field.type, i) else "%s"
+    private fun getJsonExampleTemplate(path: List<Field<*>>, field: Field<*>, i: Int): String = when (field.type) {
+        is StrictObjectType -> "${indent(i)}\"${field.name.asJsonFieldName()}\" : {\n%s\n${indent(i)}}"
 
-                is FreeObjectType -> "${indent(i)}\"${field.name.asJsonFieldName()}\" : " + when (field.type.subtype) {
-                    is StrictObjectType -> "{\n${indent(i + 1)}\"key\" : {\n${indent(i + 1)}%s\n${indent(i + 1)}}\n${indent(i)}}"
-                    else -> "{\n${indent(i + 1)}\"key\" : ${getExampleJsonValue(field, field.type.subtype!!)}\n${indent(i)}}"
-                }
+        is MultiObjectType -> if (field == path.last()) getExampleJsonValue(field, field.type, i) else "%s"
 
-                is ArrayType<*> -> "${indent(i)}\"${field.name.asJsonFieldName()}\" : " + when (field.type.subtype) {
-                    is StrictObjectType, is MultiObjectType -> "[{\n%s\n${indent(i)}}]"
-                    else -> "[\n${indent(i + 1)}${getExampleJsonValue(field, field.type.subtype)}\n${indent(i)}]"
-                }
+        is FreeObjectType -> "${indent(i)}\"${field.name.asJsonFieldName()}\" : " + when (field.type.subtype) {
+            is StrictObjectType -> "{\n${indent(i + 1)}\"key\" : {\n${indent(i + 1)}%s\n${indent(i + 1)}}\n${indent(i)}}"
+            else -> "{\n${indent(i + 1)}\"key\" : ${getExampleJsonValue(field, field.type.subtype!!)}\n${indent(i)}}"
+        }
 
-                else -> "${indent(i)}\"${field.name.asJsonFieldName()}\": ${getExampleJsonValue(field, field.type)}"
-            })
+        is ArrayType<*> -> "${indent(i)}\"${field.name.asJsonFieldName()}\" : " + when (field.type.subtype) {
+            is StrictObjectType, is MultiObjectType -> "[{\n%s\n${indent(i)}}]"
+            else -> "[\n${indent(i + 1)}${getExampleJsonValue(field, field.type.subtype)}\n${indent(i)}]"
         }
-        return json.format("${indent(path.lastIndex + 1)}&lt;object&gt;")
+
+        else -> "${indent(i)}\"${field.name.asJsonFieldName()}\": ${getExampleJsonValue(field, field.type)}"
     }
 
     private fun getExampleJsonValue(field: Field<*>, type: Type<*>, indent: Int = 0) = when (type) {
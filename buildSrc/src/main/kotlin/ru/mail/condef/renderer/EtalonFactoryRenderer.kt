@@ -0,0 +1,118 @@
+package ru.mail.condef.renderer
+
+import ru.mail.condef.dsl.*
+import ru.mail.condef.etalon.EtalonObject
+import ru.mail.condef.etalon.EtalonVariant
+
+/*
+* Factory materializing the etalon validated at build time, so the app gets its baseline configuration
+* without any JSON work. Fields are set in the JSON order, exactly like the parser would set them.
+*/
+class EtalonFactoryRenderer(
+        model: SchemaModel,
+        packageName: String,
+        private val etalon: EtalonObject,
+        private val factoryName: String,
+        private val interfaceName: String,
+        private val implementationName: String) : JavaCodeRenderer(model, packageName) {
+
+    private val methods = mutableListOf<FactoryMethod>()
+    private val usedNames = mutableSetOf<String>()
+
+    init {
+        addMethod("create", implementationName, etalon, "public")
+    }
+
+    override fun listDependencies(): List<String> =
+            super.listDependencies() + model.nestedTypeImports(packageName, interfaceName, implementationName)
+
+    override fun render(writer: TextWriter) {
+        super.render(writer)
+        with(writer) {
+            nextLine()
+            append("public final class $factoryName {")
+            with(withIncreasedIndentation()) {
+                append("private $factoryName() {")
+                append("}")
+            }
+            withIncreasedIndentation().join(methods) {
+                nextLine(2)
+            }
+            append("}")
+        }
+    }
+
+    private fun addMethod(name: String, implName: String, value: EtalonObject, modifier: String = "private"): String {
+        val method = FactoryMethod(name, implName, modifier)
+        methods.add(method)
+        method.statements.add("$implName obj = new $implName();")
+        value.values.forEach { (definitionField, fieldValue) ->
+            val field = model.node(definitionField)
+            when (val type = field.type) {
+                is ArrayType<*> -> {
+                    val local = "${field.fieldName}List"
+                    method.statements.add("${field.typeName} $local = new ArrayList<>();")
+                    (fieldValue as List<*>).forEach {
+                        method.statements.add("$local.add(${expression(field, type.subtype, it!!)});")
+                    }
+                    method.statements.add("obj.${field.setterName}($local);")
+                }
+                is FreeObjectType -> {
+                    val local = "${field.fieldName}Map"
+                    method.statements.add("${field.typeName} $local = new HashMap<>();")
+                    (fieldValue as Map<*, *>).forEach {
+                        method.statements.add("$local.put(${literal(it.key as String)}, ${expression(field, type.subtype!!, it.value!!)});")
+                    }
+                    method.statements.add("obj.${field.setterName}($local);")
+                }
+                else -> method.statements.add("obj.${field.setterName}(${expression(field, type, fieldValue)});")
+            }
+        }
+        method.statements.add("return obj;")
+        return method.name
+    }
+
+    private fun expression(field: FieldNode, type: Type<*>, value: Any): String = when (type) {
+        is StringType -> literal(value as String)
+        is IntegerType -> "$value"
+        is LongType -> "${value}L"
+        is BoolType -> "$value"
+        is StrictObjectType -> "${addMethod(uniqueName(field.className), "${field.className}Impl", value as EtalonObject)}()"
+        is MultiObjectType -> {
+            val variant = value as EtalonVariant
+            val variantName = field.variants.getValue(variant.key).className
+            "${addMethod(uniqueName(variantName), "${variantName}Impl", variant.value)}()"
+        }
+        is ArrayType<*>, is FreeObjectType ->
+            throw IllegalStateException("Etalon factory does not support nested collections in field `${field.jsonName}`")
+    }
+
+    private fun literal(value: String) = "\"${StringEscapeUtils.escapeJava(value)}\""
+
+    private fun uniqueName(className: String): String {
+        val baseName = "create$className"
+        var name = baseName
+        var index = 2
+        while (!usedNames.add(name)) {
+            name = "$baseName${index++}"
+        }
+        return name
+    }
+
+    private class FactoryMethod(val name: String, val implName: String, val modifier: String) : Renderer {
+        val statements = mutableListOf<String>()
+
+        override fun render(writer: TextWriter) {
+            writer.append("$modifier static $implName $name() {")
+            with(writer.withIncreasedIndentation()) {
+                statements.forEachIndexed { index, statement ->
+                    if (index != 0) {
+                        nextLine()
+                    }
+                    append(statement)
+                }
+            }
+            writer.append("}")
+        }
+    }
+}
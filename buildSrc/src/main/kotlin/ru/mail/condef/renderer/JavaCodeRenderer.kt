@@ -30,18 +30,37 @@ fun inferFieldTypeName(name: Field.Name, type: Type<*>): String = when (type) {
     is MultiObjectType -> "${name.asClassName()}Base"
 }
 
+fun inferFieldTypeName(name: Field.Name, type: Type<*>, storage: FieldStorage): String = when (storage) {
+    FieldStorage.BOXED -> inferFieldTypeName(name, type)
+    FieldStorage.PACKED -> when (type) {
+        is IntegerType -> "int"
+        is LongType -> "long"
+        is BoolType -> "boolean"
+        else -> inferFieldTypeName(name, type)
+    }
+}
+
+fun String.toConstantCase() =
+        replace(Regex("([a-z0-9])([A-Z])"), "$1_$2").toUpperCase(Locale.ENGLISH)
+
+fun asPredefinedValues(values: List<*>): List<String> = values.map {
+    when (it) {
+        is String -> "\"${it.toLowerCase(Locale.ENGLISH)}\""
+        is Int -> "$it"
+        is Long -> "${it}L"
+        else -> throw IllegalStateException("unsupported default type")
+    }
+}
+
 fun asPredefinedCollection(values: List<*>): String {
-    return "Arrays.asList(${values.joinToString {
-        when (it) {
-            is String -> "\"${it.toLowerCase(Locale.ENGLISH)}\""
-            is Int -> "$it"
-            is Long -> "${it}L"
-            else -> throw IllegalStateException("unsupported default type")
-        }
-    }})"
+    return "Arrays.asList(${asPredefinedValues(values).joinToString()})"
 }
 
-abstract class JavaCodeRenderer(val definition: Definition, val packageName: String) : Renderer {
+abstract class JavaCodeRenderer(val model: SchemaModel, val packageName: String) : Renderer {
+
+    val definition: Definition
+        get() = model.definition
+
     override fun render(writer: TextWriter) {
         with(writer) {
             append("/*").nextLine()
@@ -49,7 +68,6 @@ abstract class JavaCodeRenderer(val definition: Definition, val packageName: Str
             append("*/").nextLine().nextLine()
 
             append("package $packageName;").nextLine(2)
-            performChecks(collectAllFieldsRecursively(definition))
             listDependencies().forEach { import ->
                 append("import $import;")
                 nextLine()
@@ -57,81 +75,6 @@ abstract class JavaCodeRenderer(val definition: Definition, val packageName: Str
         }
     }
 
-    protected open fun performChecks(fields: List<Field<*>>) {
-        checkUniqueClassNames(fields)
-        checkReservedWordsCollisions(fields)
-        checkUniqueParseMethodNames(fields)
-        checkUnsupportedRecursionTypes<ArrayType<*>>(fields)
-        checkUnsupportedRecursionTypes<FreeObjectType>(fields)
-    }
-
-    private fun checkReservedWordsCollisions(fields: List<Field<*>>) {
-        fields
-                .firstOrNull { reservedJavaWords.contains(it.name.asFieldName()) }
-                ?.let {
-                    throw IllegalStateException("Generated field `${it.name.asFieldName()}` clashes with reserved Java keyword, specify different name using `withFieldName`")
-                }
-    }
-
-    private inline fun <reified T : CompositeType> checkUnsupportedRecursionTypes(fields: List<Field<*>>) {
-        fields
-                .firstOrNull { it.type is T && it.type.subtype is T }
-                ?.let {
-                    throw IllegalStateException("${T::class.java} of ${T::class.java} does not supported")
-                }
-    }
-
-
-    private fun checkUniqueClassNames(fields: List<Field<*>>) {
-        fields
-                .filter { it.type is StrictObjectType || (it.type is ArrayType<*> && it.type.subtype is StrictObjectType) }
-                .groupBy { it.name.asClassName() }
-                .asIterable()
-                .firstNonSingle()
-                ?.let {
-                    throw IllegalStateException("Duplicate generated ClassName in Field `${it.key}`, specify custom class name using `withClassName`")
-                }
-    }
-
-    private fun checkUniqueParseMethodNames(fields: List<Field<*>>) {
-        fields
-                .filter { it.type is StrictObjectType || (it.type is ArrayType<*> || it.type is FreeObjectType) }
-                .groupBy { it.name.asClassName() + it.type.javaClass.simpleName }
-                .asIterable()
-                .firstNonSingle()
-                ?.let {
-                    throw IllegalStateException("Duplicate generated Method name in Field `${it.key}`, specify custom class name using `withClassName`")
-                }
-    }
-
-    private fun <T : Map.Entry<*, Collection<*>>> Iterable<T>.firstNonSingle(): T? {
-        return this.firstOrNull { it.value.size > 1 }
-    }
-
-    private fun collectAllFieldsRecursively(definition: Definition): List<Field<*>> {
-        return definition.fields
-                .flatMap {
-                    val type = it.type
-                    listOf(it) + if (type is StrictObjectType) {
-                        collectAllFieldsRecursively(type.definition)
-                    } else if (type is CompositeType && type.subtype is StrictObjectType) {
-                        collectAllFieldsRecursively((type.subtype as StrictObjectType).definition)
-                    } else if (type is MultiObjectType) {
-                        type.types.values.flatMap { collectAllFieldsRecursively(it) }
-                    } else {
-                        emptyList()
-                    }
-                }
-    }
-
     protected open fun listDependencies(): List<String>
             = listOf("List", "Map", "Set", "Collection", "Collections", "ArrayList", "HashMap", "HashSet", "Iterator", "Arrays", "regex.*", "Locale").map { "java.util.$it" }
-
-    companion object {
-        val reservedJavaWords = setOf("abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "default",
-                "do", "double", "else", "enum", "extends", "false", "final", "finally", "float", "for", "goto", "if", "implements",
-                "import", "instanceof", "int", "interface", "long", "native", "new", "null", "package", "private", "protected",
-                "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
-                "transient", "true", "try", "void", "volatile", "while", "continue")
-    }
-}
\ No newline at end of file
+}
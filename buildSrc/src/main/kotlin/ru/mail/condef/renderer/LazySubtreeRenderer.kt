@@ -0,0 +1,50 @@
+package ru.mail.condef.renderer
+
+/*
+* Holder of a parsed but not yet converted JSON subtree. The conversion runs once, on the first get(),
+* and the source is dropped afterwards.
+*/
+class LazySubtreeRenderer(val packageName: String) : Renderer {
+
+    override fun render(writer: TextWriter) {
+        with(writer) {
+            append("/*").nextLine()
+            append(" * Automatically generated file. DO NOT MODIFY").nextLine()
+            append("*/").nextLine().nextLine()
+
+            append("package $packageName;").nextLine(2)
+            append("import org.json.JSONObject;").nextLine(2)
+            append("public abstract class LazySubtree<T> {")
+            with(withIncreasedIndentation()) {
+                append("private JSONObject mSource;").nextLine()
+                append("private T mValue;").nextLine()
+                append("private volatile boolean mParsed;").nextLine(2)
+                append("public LazySubtree(JSONObject source) {")
+                withIncreasedIndentation().append("mSource = source;")
+                append("}").nextLine(2)
+                append("public T get() {")
+                with(withIncreasedIndentation()) {
+                    append("if (!mParsed) {")
+                    with(withIncreasedIndentation()) {
+                        append("synchronized (this) {")
+                        with(withIncreasedIndentation()) {
+                            append("if (!mParsed) {")
+                            with(withIncreasedIndentation()) {
+                                append("mValue = parse(mSource);").nextLine()
+                                append("mSource = null;").nextLine()
+                                append("mParsed = true;")
+                            }
+                            append("}")
+                        }
+                        append("}")
+                    }
+                    append("}").nextLine()
+                    append("return mValue;")
+                }
+                append("}").nextLine(2)
+                append("protected abstract T parse(JSONObject source);")
+            }
+            append("}")
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ru.mail.condef.renderer
+
+/*
+* Bytecode budget of a generated method. Renderers estimate the bytecode size of the statements they emit
+* and move whatever does not fit into chunked helper methods, so methods stay below the 64KB limit of the
+* class file format and below the size HotSpot and ART refuse to compile (8000 bytes by HotSpot's
+* HugeMethodLimit). Estimates are rough, the default leaves room for their error.
+*/
+class MethodBudget(val maxBytes: Int = DEFAULT_MAX_BYTES) {
+
+    init {
+        if (maxBytes < MIN_BYTES) {
+            throw IllegalArgumentException("Method budget of $maxBytes bytes is too small, at least $MIN_BYTES bytes are needed")
+        }
+    }
+
+    fun fits(bytes: Int): Boolean = bytes <= maxBytes
+
+    /*
+    * Consecutive items grouped so that every group fits the budget. An item larger than the budget
+    * gets a group of its own.
+    */
+    fun <T> chunks(items: List<T>, size: (T) -> Int): List<List<T>> {
+        val chunks = mutableListOf<List<T>>()
+        var chunk = mutableListOf<T>()
+        var chunkBytes = 0
+        for (item in items) {
+            val bytes = size(item)
+            if (chunk.isNotEmpty() && chunkBytes + bytes > maxBytes) {
+                chunks.add(chunk)
+                chunk = mutableListOf()
+                chunkBytes = 0
+            }
+            chunk.add(item)
+            chunkBytes += bytes
+        }
+        if (chunk.isNotEmpty()) {
+            chunks.add(chunk)
+        }
+        return chunks
+    }
+
+    companion object {
+        const val DEFAULT_MAX_BYTES = 4000
+
+        private const val MIN_BYTES = 256
+    }
+}
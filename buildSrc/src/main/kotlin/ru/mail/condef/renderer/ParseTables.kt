@@ -0,0 +1,495 @@
+package ru.mail.condef.renderer
+
+import ru.mail.condef.dsl.*
+
+/*
+* Objects the TABLE parser mode reads from the token stream. Each one is described by a static table: the keys of
+* its fields and one packed int per field with the kind of the value, absence policy, whether rejected values are
+* reported, the setter index and the validator id. A single loop reads every object by its table and hands the values
+* to a setter switch per object and kind, arrays, maps and multi objects are read by the methods of the STREAMING mode.
+* Multi object variants are parsed from a buffered tree as in the STREAMING mode, so they have no tables.
+*/
+class ParseTables(model: SchemaModel, private val rootImplementationName: String) {
+
+    val nodes: List<ObjectNode> = model.objects.filter { !it.parsedFromTree }
+
+    private val names = HashMap<ObjectNode, String>()
+
+    private val ids = HashMap<ObjectNode, Int>()
+
+    init {
+        val usedNames = mutableSetOf<String>()
+        nodes.forEachIndexed { id, node ->
+            val baseName = if (node.isRoot) "Root" else node.className
+            var name = baseName
+            var index = 2
+            while (!usedNames.add(name)) {
+                name = "$baseName${index++}"
+            }
+            names[node] = name
+            ids[node] = id
+        }
+    }
+
+    /*
+    * Expression reading the given object with its table.
+    */
+    fun readExpression(node: ObjectNode) =
+            "readObject(reader, ${descriptorName(node)}, new ${node.implementationName(rootImplementationName)}())"
+
+    private fun descriptorName(node: ObjectNode) = "${names.getValue(node).toConstantCase()}_FIELDS"
+
+    private fun factoryName(node: ObjectNode) = "${names.getValue(node).decapitalize()}Fields"
+
+    private fun setterName(node: ObjectNode, kind: Kind) = "set${names.getValue(node)}${kind.suffix}"
+
+    /*
+    * Layout of the packed field specs: kind, flags, index of the setter among the fields of the same kind
+    * and validator id.
+    */
+    val constants: Renderer = object : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                Kind.values().forEach {
+                    append("private static final int ${it.name} = ${it.ordinal};").nextLine()
+                }
+                append("private static final int KIND_MASK = 0xf;").nextLine()
+                append("private static final int REQUIRED = 0x10;").nextLine()
+                append("private static final int REPORTED = 0x20;").nextLine()
+                append("private static final int SETTER_SHIFT = 8;").nextLine()
+                append("private static final int SETTER_MASK = 0x${Integer.toHexString(MAX_INDEX)};").nextLine()
+                append("private static final int VALIDATOR_SHIFT = 20;")
+            }
+        }
+    }
+
+    fun descriptors(): List<Renderer> = nodes.map {
+        "private static final FieldTable ${descriptorName(it)} = ${factoryName(it)}();".asRenderer()
+    }
+
+    val entryMethod: Renderer = object : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("public $rootImplementationName parse(JsonReader reader) throws IOException, RequiredFieldException {")
+                withIncreasedIndentation().append("return ${readExpression(nodes.first())};")
+                append("}")
+            }
+        }
+    }
+
+    /*
+    * The shared loop, setter and validator dispatch and the factories of the field tables.
+    */
+    fun methods(context: ParseContext): List<Renderer> {
+        val validators = TableValidators(context)
+        val methods = mutableListOf<Renderer>(ReadObjectMethod(), ReadFieldMethod(), RejectValueMethod())
+        Kind.values().forEach { kind ->
+            val kindNodes = nodes.filter { node -> node.fields.any { kindOf(it.type) == kind } }
+            methods.add(SetterDispatchMethod(kind, kindNodes))
+            kindNodes.forEach { methods.add(SetterMethod(it, kind)) }
+        }
+        Kind.values().filter { it != Kind.VALUE }.forEach { methods.add(validators.dispatchMethod(it)) }
+        nodes.forEach { methods.add(DescriptorFactory(it, validators)) }
+        return methods
+    }
+
+    val fieldTableClass: Renderer = FieldTableClass()
+
+    private enum class Kind(val javaType: String, val readerMethod: String, val suffix: String) {
+        STRING("String", "nextString", "String"),
+        INT("int", "nextInt", "Int"),
+        LONG("long", "nextLong", "Long"),
+        BOOLEAN("boolean", "nextBoolean", "Boolean"),
+        VALUE("", "", "Value");
+
+        val validatorMethod: String get() = "isValid$suffix"
+    }
+
+    private fun kindOf(type: Type<*>) = when (type) {
+        is StringType -> Kind.STRING
+        is IntegerType -> Kind.INT
+        is LongType -> Kind.LONG
+        is BoolType -> Kind.BOOLEAN
+        else -> Kind.VALUE
+    }
+
+    /*
+    * Validators of scalar fields numbered from 1, 0 means no validation. Identical conditions share an id.
+    */
+    private inner class TableValidators(private val context: ParseContext) {
+
+        private val ids = LinkedHashMap<String, Int>()
+        private val cases = LinkedHashMap<Kind, MutableList<Pair<Int, ValidatorRenderer<*>>>>()
+
+        init {
+            nodes.forEach { node ->
+                node.fields.forEach { field ->
+                    val kind = kindOf(field.type)
+                    val validator = validator(field)
+                    if (kind != Kind.VALUE && validator !is StubValidator) {
+                        ids.getOrPut("$kind:${validator.validationCondition()}") {
+                            val id = ids.size + 1
+                            cases.getOrPut(kind) { mutableListOf() }.add(id to validator)
+                            id
+                        }
+                    }
+                }
+            }
+        }
+
+        fun validator(field: FieldNode): ValidatorRenderer<*> = context.validators.validatorFor(field.field, field.type)
+
+        fun id(field: FieldNode): Int {
+            val validator = validator(field)
+            return if (validator is StubValidator) 0 else ids.getValue("${kindOf(field.type)}:${validator.validationCondition()}")
+        }
+
+        fun dispatchMethod(kind: Kind): Renderer = object : Renderer {
+            override fun render(writer: TextWriter) {
+                with(writer) {
+                    append("private static boolean ${kind.validatorMethod}(int validator, ${kind.javaType} value) {")
+                    with(withIncreasedIndentation()) {
+                        val kindCases = cases[kind].orEmpty()
+                        if (kindCases.isEmpty()) {
+                            append("return true;")
+                        } else {
+                            append("switch (validator) {")
+                            with(withIncreasedIndentation()) {
+                                kindCases.forEach { (id, validator) ->
+                                    append("case $id: {")
+                                    with(withIncreasedIndentation()) {
+                                        validator.appendPreValidate(this)
+                                        append("return ${validator.validationCondition()};")
+                                    }
+                                    append("}").nextLine()
+                                }
+                                append("default: {")
+                                withIncreasedIndentation().append("return true;")
+                                append("}")
+                            }
+                            append("}")
+                        }
+                    }
+                    append("}")
+                }
+            }
+        }
+    }
+
+    /*
+    * A factory method per table keeps wide tables out of the static initializer, which is a single method
+    * for the whole parser.
+    */
+    private inner class DescriptorFactory(private val node: ObjectNode, private val validators: TableValidators) : Renderer {
+
+        private val setters = HashMap<FieldNode, Int>().also { setters ->
+            node.fields.groupBy { kindOf(it.type) }.values.forEach { fields ->
+                fields.forEachIndexed { setter, field -> setters[field] = setter }
+            }
+        }
+
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private static FieldTable ${factoryName(node)}() {")
+                with(withIncreasedIndentation()) {
+                    append(node.fields.joinToString(", ", "String[] keys = {", "};") { "\"${StringEscapeUtils.escapeJava(it.jsonName)}\"" })
+                    nextLine()
+                    append(node.fields.joinToString(", ", "int[] specs = {", "};") { spec(it) })
+                    nextLine()
+                    append("return new FieldTable(${ids.getValue(node)}, keys, specs);")
+                }
+                append("}")
+            }
+        }
+
+        private fun spec(field: FieldNode): String {
+            val parts = mutableListOf(kindOf(field.type).name)
+            if (field.field.absenceHandler is RequiredHandler) {
+                parts.add("REQUIRED")
+            }
+            if (validators.validator(field) is SpecialValuesValidatorRenderer) {
+                parts.add("REPORTED")
+            }
+            val setter = setters.getValue(field)
+            if (setter != 0) {
+                parts.add("${checkIndex(setter, "fields of one type in an object")} << SETTER_SHIFT")
+            }
+            val id = validators.id(field)
+            if (id != 0) {
+                parts.add("${checkIndex(id, "validators")} << VALIDATOR_SHIFT")
+            }
+            return parts.joinToString(" | ")
+        }
+    }
+
+    /*
+    * Selects the setter method of the object by the table id.
+    */
+    private inner class SetterDispatchMethod(private val kind: Kind, private val kindNodes: List<ObjectNode>) : Renderer {
+        override fun render(writer: TextWriter) {
+            val valueKind = kind == Kind.VALUE
+            with(writer) {
+                if (valueKind) {
+                    append("private void setValue(JsonReader reader, int table, Object obj, int setter) throws IOException, RequiredFieldException {")
+                } else {
+                    append("private static void set${kind.suffix}(int table, Object obj, int setter, ${kind.javaType} value) {")
+                }
+                with(withIncreasedIndentation()) {
+                    append("switch (table) {")
+                    with(withIncreasedIndentation()) {
+                        kindNodes.forEach { node ->
+                            val cast = "(${node.implementationName(rootImplementationName)}) obj"
+                            append("case ${ids.getValue(node)}: {")
+                            with(withIncreasedIndentation()) {
+                                if (valueKind) {
+                                    append("${setterName(node, kind)}(reader, $cast, setter);").nextLine()
+                                } else {
+                                    append("${setterName(node, kind)}($cast, setter, value);").nextLine()
+                                }
+                                append("return;")
+                            }
+                            append("}").nextLine()
+                        }
+                        append("default: {")
+                        withIncreasedIndentation().append("throw new IllegalArgumentException(\"No ${kind.name.toLowerCase()} fields in table \" + table);")
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    /*
+    * Setters of the fields of one kind of an object, nested objects, arrays, maps and multi objects are read here too.
+    */
+    private inner class SetterMethod(private val node: ObjectNode, private val kind: Kind) : Renderer {
+        override fun render(writer: TextWriter) {
+            val implementationName = node.implementationName(rootImplementationName)
+            val valueKind = kind == Kind.VALUE
+            with(writer) {
+                if (valueKind) {
+                    append("private void ${setterName(node, kind)}(JsonReader reader, $implementationName obj, int setter) throws IOException, RequiredFieldException {")
+                } else {
+                    append("private static void ${setterName(node, kind)}($implementationName obj, int setter, ${kind.javaType} value) {")
+                }
+                with(withIncreasedIndentation()) {
+                    append("switch (setter) {")
+                    with(withIncreasedIndentation()) {
+                        node.fields.filter { kindOf(it.type) == kind }.forEachIndexed { setter, field ->
+                            append("case $setter: {")
+                            with(withIncreasedIndentation()) {
+                                append("obj.${field.setterName}(${if (valueKind) valueSource(field) else "value"});").nextLine()
+                                append("return;")
+                            }
+                            append("}").nextLine()
+                        }
+                        append("default: {")
+                        withIncreasedIndentation().append("throw new IllegalArgumentException(\"Unknown setter \" + setter);")
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+
+        private fun valueSource(field: FieldNode): String = when (field.type) {
+            is StrictObjectType -> readExpression(field.objectNode!!)
+            is ArrayType<*> -> "parse${field.className}Array(reader)"
+            is FreeObjectType -> "parse${field.className}Object(reader)"
+            else -> "parse${field.className}(reader)"
+        }
+    }
+
+    private class ReadObjectMethod : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private <T> T readObject(JsonReader reader, FieldTable fields, T obj) throws IOException, RequiredFieldException {")
+                with(withIncreasedIndentation()) {
+                    append("boolean[] present = fields.hasRequired ? new boolean[fields.keys.length] : null;").nextLine()
+                    append("reader.beginObject();").nextLine()
+                    append("while (reader.hasNext()) {")
+                    with(withIncreasedIndentation()) {
+                        append("Integer index = fields.indices.get(reader.nextName());").nextLine()
+                        append("if (index == null) {")
+                        withIncreasedIndentation().append("reader.skipValue();")
+                        append("} else {")
+                        with(withIncreasedIndentation()) {
+                            append("if (present != null) {")
+                            withIncreasedIndentation().append("present[index] = true;")
+                            append("}").nextLine()
+                            append("readField(reader, fields, obj, index);")
+                        }
+                        append("}")
+                    }
+                    append("}").nextLine()
+                    append("reader.endObject();").nextLine()
+                    append("if (present != null) {")
+                    with(withIncreasedIndentation()) {
+                        append("for (int i = 0; i < present.length; i++) {")
+                        with(withIncreasedIndentation()) {
+                            append("if ((fields.specs[i] & REQUIRED) != 0 && !present[i]) {")
+                            with(withIncreasedIndentation()) {
+                                append("mAnalyticsSender.sendParsingConfigError(fields.keys[i], \"bad_value\", \"configuration_not_accepted\");").nextLine()
+                                append("throw new RequiredFieldException(fields.keys[i]);")
+                            }
+                            append("}")
+                        }
+                        append("}")
+                    }
+                    append("}").nextLine()
+                    append("return obj;")
+                }
+                append("}")
+            }
+        }
+    }
+
+    /*
+    * A scalar of a wrong type substitutes the default or, for a required field, rejects the configuration.
+    * Nested values are read by the table of their object, their failures are not caught here.
+    */
+    private class ReadFieldMethod : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private void readField(JsonReader reader, FieldTable fields, Object obj, int index) throws IOException, RequiredFieldException {")
+                with(withIncreasedIndentation()) {
+                    append("int spec = fields.specs[index];").nextLine()
+                    append("int kind = spec & KIND_MASK;").nextLine()
+                    append("int setter = (spec >>> SETTER_SHIFT) & SETTER_MASK;").nextLine()
+                    append("if (kind == VALUE) {")
+                    with(withIncreasedIndentation()) {
+                        append("setValue(reader, fields.id, obj, setter);").nextLine()
+                        append("return;")
+                    }
+                    append("}").nextLine()
+                    append("int validator = spec >>> VALIDATOR_SHIFT;").nextLine()
+                    append("try {")
+                    with(withIncreasedIndentation()) {
+                        append("switch (kind) {")
+                        with(withIncreasedIndentation()) {
+                            Kind.values().filter { it != Kind.VALUE }.forEach { kind ->
+                                append("case ${kind.name}: {")
+                                with(withIncreasedIndentation()) {
+                                    append("${kind.javaType} value = reader.${kind.readerMethod}();").nextLine()
+                                    append("if (validator == 0 || ${kind.validatorMethod}(validator, value)) {")
+                                    withIncreasedIndentation().append("set${kind.suffix}(fields.id, obj, setter, value);")
+                                    append("} else {")
+                                    withIncreasedIndentation().append("rejectValue(fields, index);")
+                                    append("}").nextLine()
+                                    append("return;")
+                                }
+                                append("}").nextLine()
+                            }
+                            append("default: {")
+                            withIncreasedIndentation().append("throw new IllegalArgumentException(\"Unknown kind \" + kind);")
+                            append("}")
+                        }
+                        append("}")
+                    }
+                    append("} catch (IllegalStateException | NumberFormatException e) {")
+                    with(withIncreasedIndentation()) {
+                        append("String key = fields.keys[index];").nextLine()
+                        append("if ((spec & REQUIRED) != 0) {")
+                        with(withIncreasedIndentation()) {
+                            append("mAnalyticsSender.sendParsingConfigError(key, \"bad_value\", \"configuration_not_accepted\");").nextLine()
+                            append("throw new RequiredFieldException(key);")
+                        }
+                        append("}").nextLine()
+                        append("reader.skipValue();").nextLine()
+                        append("mAnalyticsSender.sendParsingConfigError(key, \"bad_type\", \"default_substituted\");")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    /*
+    * Only values rejected by allowed values are reported, as in the unrolled modes.
+    */
+    private class RejectValueMethod : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private void rejectValue(FieldTable fields, int index) throws RequiredFieldException {")
+                with(withIncreasedIndentation()) {
+                    append("int spec = fields.specs[index];").nextLine()
+                    append("if ((spec & REPORTED) != 0) {")
+                    with(withIncreasedIndentation()) {
+                        append("mAnalyticsSender.sendParsingConfigError(fields.keys[index], \"bad_value\", \"configuration_not_accepted\");").nextLine()
+                        append("if ((spec & REQUIRED) != 0) {")
+                        withIncreasedIndentation().append("throw new RequiredFieldException(fields.keys[index]);")
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private class FieldTableClass : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("private static final class FieldTable {")
+                with(withIncreasedIndentation()) {
+                    append("final int id;").nextLine()
+                    append("final String[] keys;").nextLine()
+                    append("final int[] specs;").nextLine()
+                    append("final Map<String, Integer> indices;").nextLine()
+                    append("final boolean hasRequired;").nextLine(2)
+                    append("FieldTable(int id, String[] keys, int[] specs) {")
+                    with(withIncreasedIndentation()) {
+                        append("this.id = id;").nextLine()
+                        append("this.keys = keys;").nextLine()
+                        append("this.specs = specs;").nextLine()
+                        append("indices = new HashMap<>(keys.length * 2);").nextLine()
+                        append("boolean hasRequired = false;").nextLine()
+                        append("for (int i = 0; i < keys.length; i++) {")
+                        with(withIncreasedIndentation()) {
+                            append("indices.put(keys[i], i);").nextLine()
+                            append("hasRequired |= (specs[i] & REQUIRED) != 0;")
+                        }
+                        append("}").nextLine()
+                        append("this.hasRequired = hasRequired;")
+                    }
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    private fun checkIndex(index: Int, what: String): Int {
+        if (index > MAX_INDEX) {
+            throw IllegalArgumentException("Too many $what for the TABLE parser mode, at most ${MAX_INDEX + 1} are supported")
+        }
+        return index
+    }
+
+    private fun String.asRenderer(): Renderer = object : Renderer {
+        override fun render(writer: TextWriter) {
+            writer.append(this@asRenderer)
+        }
+    }
+
+    private companion object {
+        const val MAX_INDEX = 0xfff
+    }
+}
+
+/*
+* Reads an object nested in an array or a map with the table of that object.
+*/
+class ParseTableMethod(private val node: ObjectNode, private val name: String, private val tables: ParseTables) : Renderer {
+    override fun render(writer: TextWriter) {
+        with(writer) {
+            append("private ${node.className} $name(JsonReader reader) throws IOException, RequiredFieldException {")
+            withIncreasedIndentation().append("return ${tables.readExpression(node)};")
+            append("}")
+        }
+    }
+}
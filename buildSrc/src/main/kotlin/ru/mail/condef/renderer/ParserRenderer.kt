@@ -2,57 +2,104 @@ package ru.mail.condef.renderer
 
 import ru.mail.condef.dsl.*
 
-class ParserRenderer(definition: Definition,
+class ParserRenderer(model: SchemaModel,
                      packageName: String,
                      private val className: String,
-                     private val implementationName: String)
-    : JavaCodeRenderer(definition, packageName) {
+                     private val implementationName: String,
+                     private val mode: ParserMode = ParserMode.TREE,
+                     private val jsonReaderPackage: String = "android.util",
+                     private val fieldStorage: FieldStorage = FieldStorage.BOXED,
+                     private val lazySubtrees: Boolean = false,
+                     budget: MethodBudget = MethodBudget())
+    : JavaCodeRenderer(model, packageName) {
+
+    init {
+        if (lazySubtrees && mode != ParserMode.TREE) {
+            throw IllegalArgumentException("Lazy subtrees need the TREE parser mode, a token stream cannot be revisited")
+        }
+        if (mode == ParserMode.TABLE && model.layout == ClassLayout.SPLIT) {
+            throw IllegalArgumentException("The TABLE parser mode shares its tables in one class and needs the NESTED layout")
+        }
+    }
+
+    private val split = model.layout == ClassLayout.SPLIT
+
+    private val supportClassName = "${className}Support"
+
+    private val validators = ValidatorTable(model, if (split) "protected static" else "private static")
+
+    private val tables = if (mode == ParserMode.TABLE) ParseTables(model, implementationName) else null
+
+    /*
+    * The TABLE mode reads arrays, maps and multi objects with the methods of the STREAMING mode.
+    */
+    private val context = ParseContext(model, if (tables != null) ParserMode.STREAMING else mode, validators,
+            fieldStorage, lazySubtrees, budget, tables)
 
     override fun listDependencies(): List<String> =
-            super.listDependencies() + listOf("JSONArray", "JSONException", "JSONObject").map { "org.json.$it" } + listNestedDependencies()
+            super.listDependencies() + listOf("JSONArray", "JSONException", "JSONObject").map { "org.json.$it" } +
+                    listStreamingDependencies() + listNestedDependencies()
+
+    private fun listStreamingDependencies(): List<String> = when (mode) {
+        ParserMode.TREE -> emptyList()
+        ParserMode.STREAMING, ParserMode.TABLE -> listOf("java.io.IOException", "java.io.Reader") +
+                listOf("JsonReader", "JsonToken").map { "$jsonReaderPackage.$it" }
+    }
 
 
     private fun listNestedDependencies(): Collection<String> {
+        if (split) {
+            return emptyList()
+        }
         val rootDependency = "$packageName.$implementationName"
         val deps = mutableSetOf(rootDependency)
-        traverseDependencies(deps, definition, rootDependency)
+        collectNestedDependencies(deps, model.root, rootDependency)
         return deps.map { "static $it.*" }
     }
 
-    private fun traverseDependencies(traversed: MutableSet<String>, definition: Definition, currentDependency: String) {
-        definition.fields
-                .filter { it.type is StrictObjectType
-                        || (it.type is ArrayType<*> && (it.type.subtype is StrictObjectType || it.type.subtype is MultiObjectType)) }
-                .map {
-                    val dependencyClass = "$currentDependency.${it.name.asClassName()}Impl"
-                    traversed.add(dependencyClass)
-                    when (it.type) {
-                        is StrictObjectType -> {
-                            traverseDependencies(traversed, it.type.definition, dependencyClass)
-                        }
-                        is ArrayType<*> -> {
-                            when (it.type.subtype) {
-                                is StrictObjectType -> traverseDependencies(traversed, it.type.subtype.definition, dependencyClass)
-                                is MultiObjectType ->  {
-                                    traversed.remove(dependencyClass) // we don't need base interface as dependency
-                                    it.type.subtype.types.forEach { entry ->
-                                        traversed.add("$currentDependency.${it.name.asClassName()}${entry.key.toCamelCase()}Impl")
-                                        traverseDependencies(traversed, entry.value, "$currentDependency.${it.name.asClassName()}${entry.key.toCamelCase()}Impl")
-                                    }
-                                }
-                            }
-                        }
-                        else -> throw IllegalStateException()
+    /*
+    * Implementation classes of nested strict objects and of array elements, multi object variants instead of
+    * their base interface.
+    */
+    private fun collectNestedDependencies(traversed: MutableSet<String>, node: ObjectNode, currentDependency: String) {
+        node.fields
+                .filter { it.type is StrictObjectType || it.type is ArrayType<*> }
+                .forEach { field ->
+                    field.objects.forEach {
+                        val dependencyClass = "$currentDependency.${it.className}Impl"
+                        traversed.add(dependencyClass)
+                        collectNestedDependencies(traversed, it, dependencyClass)
                     }
                 }
     }
 
     override fun render(writer: TextWriter) {
         super.render(writer)
+        if (split) {
+            writer.nextLine()
+            writer.appendParserClass("public class $className extends $supportClassName", "public $className", parseMethods())
+            return
+        }
         with(writer) {
             nextLine()
             append("public class $className {")
             with(withIncreasedIndentation()) {
+                validators.declarations.forEach {
+                    append(it)
+                    nextLine()
+                }
+                if (validators.declarations.isNotEmpty()) {
+                    nextLine()
+                }
+                if (tables != null) {
+                    tables.constants.render(this)
+                    nextLine(2)
+                    tables.descriptors().forEach {
+                        it.render(this)
+                        nextLine()
+                    }
+                    nextLine()
+                }
                 append("private AnalyticsSender mAnalyticsSender;")
                 nextLine()
                 append("public $className(AnalyticsSender analyticsSender) {")
@@ -66,15 +113,243 @@ class ParserRenderer(definition: Definition,
         }
     }
 
-    private fun parseMethods(): Collection<Renderer> =
-            listOf(ParseStrictObjectMethod(definition, "parse", implementationName, Privacy.PUBLIC, implementationName))
-                    .flatMap { listOf(it) + it.listSubMethods() + it.listSubMethodsFromCompositeTypes() }
+    /*
+    * In the SPLIT layout this class parses the root object only. Every other object is parsed by a class
+    * of its own, created on first use, and validators and shared helpers move to a common base class.
+    * Keys are class names, the map is empty in the NESTED layout.
+    */
+    fun splitClasses(): Map<String, Renderer> {
+        if (!split) {
+            return emptyMap()
+        }
+        val classes = linkedMapOf<String, Renderer>(supportClassName to SupportClassRenderer())
+        model.objects
+                .filter { !it.isRoot }
+                .forEach { classes["${it.className}JsonParser"] = ObjectParserRenderer(it) }
+        return classes
+    }
+
+    private fun TextWriter.appendParserClass(header: String, constructor: String, methods: Collection<Renderer>) {
+        append("$header {")
+        with(withIncreasedIndentation()) {
+            append("$constructor(AnalyticsSender analyticsSender) {")
+            withIncreasedIndentation().append("super(analyticsSender);")
+            append("}")
+        }
+        withIncreasedIndentation().join(methods) {
+            nextLine(2)
+        }
+        append("}")
+    }
+
+    private inner class SupportClassRenderer : JavaCodeRenderer(model, packageName) {
 
+        override fun listDependencies(): List<String> = this@ParserRenderer.listDependencies()
+
+        override fun render(writer: TextWriter) {
+            super.render(writer)
+            val helpers = when {
+                mode == ParserMode.STREAMING && model.containsMultiObjects -> listOf(ReadJsonTreeMethods("protected"))
+                else -> emptyList()
+            } + validators.helpers
+            with(writer) {
+                nextLine()
+                append("abstract class $supportClassName {")
+                with(withIncreasedIndentation()) {
+                    validators.declarations.forEach {
+                        append(it)
+                        nextLine()
+                    }
+                    if (validators.declarations.isNotEmpty()) {
+                        nextLine()
+                    }
+                    append("protected final AnalyticsSender mAnalyticsSender;")
+                    nextLine()
+                    append("$supportClassName(AnalyticsSender analyticsSender) {")
+                    withIncreasedIndentation().append("mAnalyticsSender = analyticsSender;")
+                    append("}")
+                }
+                if (helpers.isNotEmpty()) {
+                    withIncreasedIndentation().join(helpers) {
+                        nextLine(2)
+                    }
+                }
+                append("}")
+            }
+        }
+    }
+
+    /*
+    * Variants and the objects nested in them are parsed from a buffered JSONObject in both modes.
+    */
+    private inner class ObjectParserRenderer(private val node: ObjectNode) : JavaCodeRenderer(model, packageName) {
+
+        override fun listDependencies(): List<String> = this@ParserRenderer.listDependencies()
+
+        override fun render(writer: TextWriter) {
+            super.render(writer)
+            val nodeContext = if (node.parsedFromTree) context.withMode(ParserMode.TREE) else context
+            val method = ParseStrictObjectMethod(node.definition, "parse${node.className}", node.className, Privacy.PUBLIC, nodeContext)
+            val methods = listOf(method) + method.listSubMethods() + method.listSubMethodsFromCompositeTypes()
+            writer.nextLine()
+            writer.appendParserClass("final class ${node.className}JsonParser extends $supportClassName",
+                    "${node.className}JsonParser", methods)
+        }
+    }
+
+    private fun parseMethods(): Collection<Renderer> {
+        if (tables != null) {
+            return listOf(ReaderEntryMethod(implementationName), tables.entryMethod) + tableSubMethods() +
+                    (if (model.containsMultiObjects) listOf(ReadJsonTreeMethods()) else emptyList()) +
+                    tables.methods(context) + validators.helpers + tables.fieldTableClass
+        }
+        val rootMethod = ParseStrictObjectMethod(definition, "parse", implementationName, Privacy.PUBLIC, context, implementationName)
+        val methods = listOf(rootMethod) + rootMethod.listSubMethods() + rootMethod.listSubMethodsFromCompositeTypes()
+        if (split) {
+            return when (context.mode) {
+                ParserMode.TREE -> methods
+                else -> listOf(ReaderEntryMethod(implementationName)) + methods
+            }
+        }
+        return when (context.mode) {
+            ParserMode.TREE -> methods
+            else -> listOf(ReaderEntryMethod(implementationName)) + methods +
+                    if (model.containsMultiObjects) listOf(ReadJsonTreeMethods()) else emptyList()
+        } + validators.helpers
+    }
+
+    /*
+    * Objects are read by their tables, methods remain for arrays, maps and multi objects of their fields.
+    */
+    private fun tableSubMethods(): List<Renderer> = tables!!.nodes.flatMap {
+        val method = ParseStrictObjectMethod(it.definition, "", "", Privacy.PRIVATE, context)
+        method.listSubMethods() + method.listSubMethodsFromCompositeTypes()
+    }
+
+    /*
+    * Convenience entry point of the streaming parser, owns the JsonReader created over the given Reader.
+    */
+    class ReaderEntryMethod(private val implementationName: String) : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("public $implementationName parse(Reader source) throws IOException, RequiredFieldException {")
+                with(withIncreasedIndentation()) {
+                    append("JsonReader reader = new JsonReader(source);").nextLine()
+                    append("try {")
+                    withIncreasedIndentation().append("return parse(reader);")
+                    append("} finally {")
+                    withIncreasedIndentation().append("reader.close();")
+                    append("}")
+                }
+                append("}")
+            }
+        }
+    }
+
+    /*
+    * MultiObject variants are selected by the "type" key, which is allowed to appear anywhere in the object,
+    * so the streaming parser buffers such objects as JSONObject and parses them with the tree methods.
+    */
+    class ReadJsonTreeMethods(private val modifiers: String = "private") : Renderer {
+        override fun render(writer: TextWriter) {
+            with(writer) {
+                append("$modifiers JSONObject readJsonObject(JsonReader reader) throws IOException, JSONException {")
+                with(withIncreasedIndentation()) {
+                    append("JSONObject json = new JSONObject();").nextLine()
+                    append("reader.beginObject();").nextLine()
+                    append("while (reader.hasNext()) {")
+                    withIncreasedIndentation().append("json.put(reader.nextName(), readJsonValue(reader));")
+                    append("}").nextLine()
+                    append("reader.endObject();").nextLine()
+                    append("return json;")
+                }
+                append("}").nextLine(2)
+
+                append("$modifiers JSONArray readJsonArray(JsonReader reader) throws IOException, JSONException {")
+                with(withIncreasedIndentation()) {
+                    append("JSONArray json = new JSONArray();").nextLine()
+                    append("reader.beginArray();").nextLine()
+                    append("while (reader.hasNext()) {")
+                    withIncreasedIndentation().append("json.put(readJsonValue(reader));")
+                    append("}").nextLine()
+                    append("reader.endArray();").nextLine()
+                    append("return json;")
+                }
+                append("}").nextLine(2)
+
+                append("$modifiers Object readJsonValue(JsonReader reader) throws IOException, JSONException {")
+                with(withIncreasedIndentation()) {
+                    append("JsonToken token = reader.peek();").nextLine()
+                    append("if (token == JsonToken.BEGIN_OBJECT) {")
+                    withIncreasedIndentation().append("return readJsonObject(reader);")
+                    append("} else if (token == JsonToken.BEGIN_ARRAY) {")
+                    withIncreasedIndentation().append("return readJsonArray(reader);")
+                    append("} else if (token == JsonToken.BOOLEAN) {")
+                    withIncreasedIndentation().append("return reader.nextBoolean();")
+                    append("} else if (token == JsonToken.NULL) {")
+                    with(withIncreasedIndentation()) {
+                        append("reader.nextNull();").nextLine()
+                        append("return JSONObject.NULL;")
+                    }
+                    append("} else if (token == JsonToken.NUMBER) {")
+                    with(withIncreasedIndentation()) {
+                        append("String number = reader.nextString();").nextLine()
+                        append("try {")
+                        withIncreasedIndentation().append("return Long.parseLong(number);")
+                        append("} catch (NumberFormatException e) {")
+                        withIncreasedIndentation().append("return Double.parseDouble(number);")
+                        append("}")
+                    }
+                    append("}").nextLine()
+                    append("return reader.nextString();")
+                }
+                append("}")
+            }
+        }
+    }
+
+
+    /*
+    * Parses an object of the SPLIT layout with the parser class of that object, the parser is created on first use.
+    */
+    class ParseDelegateMethod(private val node: ObjectNode,
+                              private val name: String,
+                              private val context: ParseContext) : Renderer {
+
+        private val parserClassName = "${node.className}JsonParser"
+
+        private val parserFieldName = "m${node.className}Parser"
+
+        override fun render(writer: TextWriter) {
+            val source = when (context.mode) {
+                ParserMode.TREE -> "json"
+                ParserMode.STREAMING, ParserMode.TABLE -> "reader"
+            }
+            with(writer) {
+                append("private $parserClassName $parserFieldName;").nextLine(2)
+                when (context.mode) {
+                    ParserMode.TREE -> append("private ${node.className} $name(JSONObject json) throws JSONException, RequiredFieldException {")
+                    ParserMode.STREAMING, ParserMode.TABLE -> append("private ${node.className} $name(JsonReader reader) throws IOException, RequiredFieldException {")
+                }
+                with(withIncreasedIndentation()) {
+                    append("if ($parserFieldName == null) {")
+                    withIncreasedIndentation().append("$parserFieldName = new $parserClassName(mAnalyticsSender);")
+                    append("}").nextLine()
+                    append("return $parserFieldName.parse${node.className}($source);")
+                }
+                append("}")
+            }
+        }
+    }
 
     abstract class ParseMethod(
             val name: String,
             val returnType: String,
-            val privacy: Privacy) : Renderer {
+            val privacy: Privacy,
+            val context: ParseContext) : Renderer {
+
+        val mode: ParserMode
+            get() = context.mode
 
         abstract fun collectWrittenFields(): List<Field<*>>
 
@@ -104,7 +379,27 @@ class ParserRenderer(definition: Definition,
             }
         }
 
-        private fun inferParseFuncName(field: Field<*>, type: Type<*> = field.type): String {
+        protected fun inferStreamingValueSource(field: Field<*>, type: Type<*>): String {
+            return when (type) {
+                is StringType -> "reader.nextString()"
+                is IntegerType -> "reader.nextInt()"
+                is LongType -> "reader.nextLong()"
+                is BoolType -> "reader.nextBoolean()"
+                is StrictObjectType, is ArrayType<*>, is FreeObjectType, is MultiObjectType ->
+                    "${inferParseFuncName(field, type)}(reader)"
+            }
+        }
+
+        protected fun TextWriter.appendStreamingMethodHeader(returnType: String) {
+            append("${privacy.syntax} $returnType $name(JsonReader reader) throws IOException, RequiredFieldException")
+        }
+
+        protected fun validatorFor(field: Field<*>, type: Type<*>): ValidatorRenderer<*> =
+                context.validators.validatorFor(field, type)
+
+        protected fun streamingCatchClause() = "} catch (IllegalStateException | NumberFormatException e) {"
+
+        protected fun inferParseFuncName(field: Field<*>, type: Type<*> = field.type): String {
             return when (type) {
                 is ArrayType<*> -> "parse${field.name.asClassName()}Array"
                 is FreeObjectType -> "parse${field.name.asClassName()}Object"
@@ -122,75 +417,77 @@ class ParserRenderer(definition: Definition,
         }
 
 
-        fun listSubMethods(): List<Renderer> {
-            return collectWrittenFields()
-                    .filter {
-                        it.type is StrictObjectType
-                                || it.type is ArrayType<*>
-                                || it.type is FreeObjectType
-                                || it.type is MultiObjectType
-                    }
-                    .map {
-                        when (it.type) {
-                            is StrictObjectType ->
-                                parseStrictObject(it, it.type)
-
-                            is ArrayType<*> ->
-                                parseArray(it, it.type.subtype)
-
-                            is FreeObjectType ->
-                                parseFreeObject(it, it.type)
+        fun listSubMethods(): List<Renderer> = mutableListOf<Renderer>().also { collectSubMethods(it) }
 
-                            is MultiObjectType ->
-                                parseMultiObject(it, it.type)
+        fun listSubMethodsFromCompositeTypes(): List<Renderer> = mutableListOf<Renderer>().also { collectSubMethodsFromCompositeTypes(it) }
 
-                            else -> unsupportedType()
-                        }
-                    }
-                    .flatMap { listOf(it) + it.listSubMethods() + it.listSubMethodsFromCompositeTypes() }
+        /*
+        * Methods for nested fields are appended to a single list, the recursion does not copy the lists
+        * of the levels below it.
+        */
+        fun collectSubMethods(methods: MutableList<Renderer>) {
+            for (field in collectWrittenFields()) {
+                if (context.split && field.type is StrictObjectType) {
+                    methods.add(parseDelegate(field, field.type))
+                    continue
+                }
+                if (context.tables != null && field.type is StrictObjectType) {
+                    // read with the table of the object
+                    continue
+                }
+                val method = when (field.type) {
+                    is StrictObjectType -> parseStrictObject(field, field.type)
+                    is ArrayType<*> -> parseArray(field, field.type.subtype)
+                    is FreeObjectType -> parseFreeObject(field, field.type)
+                    is MultiObjectType -> parseMultiObject(field, field.type)
+                    else -> null
+                } ?: continue
+                methods.add(method)
+                if (context.split || context.tables != null) {
+                    // objects of the elements are parsed by their own classes or tables
+                    continue
+                }
+                method.collectSubMethods(methods)
+                method.collectSubMethodsFromCompositeTypes(methods)
+            }
         }
 
-        fun listSubMethodsFromCompositeTypes(): List<Renderer> {
-            return collectWrittenFields()
-                    .filter {
-                        it.type is CompositeType && (
-                                it.type.subtype is StrictObjectType
-                                        || it.type.subtype is CompositeType
-                                        || it.type.subtype is MultiObjectType)
-                    }
-                    .map {
-                        when ((it.type as CompositeType).subtype) {
-                            is StrictObjectType ->
-                                parseStrictObject(it, it.type.subtype!!)
-
-                            is FreeObjectType ->
-                                parseFreeObject(it, it.type.subtype as FreeObjectType)
-
-                            is ArrayType<*> ->
-                                parseArray(Field(it.name, it.type.subtype!!), (it.type.subtype!! as ArrayType<*>).subtype)
-
-                            is MultiObjectType ->
-                                parseMultiObject(it, (it.type as CompositeType).subtype as MultiObjectType)
-
-                            else -> unsupportedType("Only Strict, FreeObject and MultiObject are supported as composite subtypes $it")
-                        }
-                    }
+        fun collectSubMethodsFromCompositeTypes(methods: MutableList<Renderer>) {
+            for (field in collectWrittenFields()) {
+                val type = field.type as? CompositeType ?: continue
+                when (val subtype = type.subtype) {
+                    is StrictObjectType -> methods.add(when {
+                        context.split -> parseDelegate(field, subtype)
+                        context.tables != null -> ParseTableMethod(context.model.node(field).objectNode!!,
+                                inferParseFuncName(field, subtype), context.tables)
+                        else -> parseStrictObject(field, subtype)
+                    })
+                    is ArrayType<*> -> methods.add(parseArray(Field(field.name, subtype), subtype.subtype))
+                    is MultiObjectType -> methods.add(parseMultiObject(field, subtype))
+                    is FreeObjectType -> methods.add(parseFreeObject(field, subtype))
+                }
+            }
         }
 
+        private fun parseDelegate(field: Field<*>, type: Type<*>): Renderer =
+                ParseDelegateMethod(context.model.node(field).objectNode!!, inferParseFuncName(field, type), context)
+
         private fun parseMultiObject(field: Field<*>, type: MultiObjectType): ParseMethod =
                 ParseMultiObjectMethod(
                         field,
                         type.types,
                         inferParseFuncName(field, type),
                         inferFieldTypeName(field.name, type),
-                        Privacy.PRIVATE)
+                        Privacy.PRIVATE,
+                        context)
 
         private fun parseStrictObject(field: Field<*>, type: Type<*>): ParseMethod =
                 ParseStrictObjectMethod(
                         getDefinition(field.type),
                         inferParseFuncName(field, type),
                         inferFieldTypeName(field.name, type),
-                        Privacy.PRIVATE)
+                        Privacy.PRIVATE,
+                        context)
 
         private fun parseFreeObject(field: Field<*>, type: FreeObjectType): ParseMethod =
                 ParseFreeObjectMethod(
@@ -198,14 +495,16 @@ class ParserRenderer(definition: Definition,
                         getDefinition(field.type),
                         inferParseFuncName(field, type),
                         inferFieldTypeName(field.name, type),
-                        Privacy.PRIVATE)
+                        Privacy.PRIVATE,
+                        context)
 
         private fun parseArray(field: Field<*>, type: Type<*>): ParseMethod =
                 ParseArrayMethod(field,
                         getDefinition(field.type),
                         inferParseFuncName(field),
                         inferFieldTypeName(field.name, type),
-                        Privacy.PRIVATE)
+                        Privacy.PRIVATE,
+                        context)
 
         private fun unsupportedType(msg: String = "Unsupported type"): Nothing = throw IllegalArgumentException(msg)
 
@@ -222,17 +521,30 @@ class ParserRenderer(definition: Definition,
             private val types: Map<String, Definition>,
             methodName: String,
             fieldTypeName: String,
-            privacy: Privacy) : ParseMethod(methodName, fieldTypeName, privacy) {
+            privacy: Privacy,
+            context: ParseContext) : ParseMethod(methodName, fieldTypeName, privacy, context) {
 
-        override fun collectWrittenFields(): List<Field<*>> {
-            return types.values.flatMap { it.fields }
-        }
+        /*
+        * Variants render their own methods together with the methods of their nested fields,
+        * listing those fields here too would derive the same methods twice.
+        */
+        override fun collectWrittenFields(): List<Field<*>> = emptyList()
 
         override fun appendMethodHeader(writer: TextWriter) {
-            writer.append("${privacy.syntax} $returnType $name(JSONObject json) throws JSONException, RequiredFieldException")
+            when (mode) {
+                ParserMode.TREE -> writer.append("${privacy.syntax} $returnType $name(JSONObject json) throws JSONException, RequiredFieldException")
+                ParserMode.STREAMING, ParserMode.TABLE -> writer.appendStreamingMethodHeader(returnType)
+            }
         }
 
         override fun appendCode(writer: TextWriter) {
+            when (mode) {
+                ParserMode.TREE -> appendTreeCode(writer)
+                ParserMode.STREAMING, ParserMode.TABLE -> appendStreamingCode(writer)
+            }
+        }
+
+        private fun appendTreeCode(writer: TextWriter) {
             val typeKey = "\"type\""
             with(writer) {
                 append("String key = json.getString($typeKey);").nextLine()
@@ -247,6 +559,16 @@ class ParserRenderer(definition: Definition,
             }
         }
 
+        private fun appendStreamingCode(writer: TextWriter) {
+            with(writer) {
+                append("try {")
+                withIncreasedIndentation().append("return $name(readJsonObject(reader));")
+                append("} catch (JSONException e) {")
+                appendParsingFieldError(withIncreasedIndentation())
+                append("}")
+            }
+        }
+
         private fun appendParsingFieldError(writer: TextWriter) {
             writer.append("mAnalyticsSender.sendParsingConfigError(\"${field.name.rawText}\", \"bad_value\", \"configuration_not_accepted\");")
             writer.nextLine()
@@ -257,24 +579,31 @@ class ParserRenderer(definition: Definition,
 
         override fun render(writer: TextWriter) {
             super.render(writer)
+            if (mode == ParserMode.STREAMING) {
+                writer.nextLine(2)
+                ParseMultiObjectMethod(field, types, name, returnType, privacy, context.withMode(ParserMode.TREE)).render(writer)
+                return
+            }
             with(writer) {
                 nextLine(2)
                 types.forEach { key, definition ->
+                    if (context.split) {
+                        ParseDelegateMethod(context.model.node(field).variants.getValue(key), toSubMethodName(key), context)
+                                .render(writer)
+                        writer.nextLine(2)
+                        return@forEach
+                    }
                     val parseStrictObjectMethod = ParseStrictObjectMethod(
                             definition,
                             toSubMethodName(key),
                             field.name.asClassName() + key.capitalize().toCamelCase(),
-                            Privacy.PRIVATE
+                            Privacy.PRIVATE,
+                            context
                     )
-                    parseStrictObjectMethod.render(writer)
-                    writer.nextLine(2)
-
-                    parseStrictObjectMethod.listSubMethods().forEach {
-                        it.render(writer)
-                        writer.nextLine(2)
-                    }
-
-                    parseStrictObjectMethod.listSubMethodsFromCompositeTypes().forEach {
+                    val methods = mutableListOf<Renderer>(parseStrictObjectMethod)
+                    parseStrictObjectMethod.collectSubMethods(methods)
+                    parseStrictObjectMethod.collectSubMethodsFromCompositeTypes(methods)
+                    methods.forEach {
                         it.render(writer)
                         writer.nextLine(2)
                     }
@@ -287,16 +616,27 @@ class ParserRenderer(definition: Definition,
                            private val definition: Definition,
                            name: String,
                            returnType: String,
-                           privacy: Privacy) : ParseMethod(name, returnType, privacy) {
+                           privacy: Privacy,
+                           context: ParseContext) : ParseMethod(name, returnType, privacy, context) {
 
         override fun collectWrittenFields(): List<Field<*>> = definition.fields
 
         override fun appendMethodHeader(writer: TextWriter) {
-            writer.append("${privacy.syntax} List<$returnType> $name(JSONArray array) throws JSONException, RequiredFieldException")
+            when (mode) {
+                ParserMode.TREE -> writer.append("${privacy.syntax} List<$returnType> $name(JSONArray array) throws JSONException, RequiredFieldException")
+                ParserMode.STREAMING, ParserMode.TABLE -> writer.appendStreamingMethodHeader("List<$returnType>")
+            }
         }
 
         override fun appendCode(writer: TextWriter) {
-            val validator = getValidator(field, (field.type as ArrayType<*>).subtype)
+            when (mode) {
+                ParserMode.TREE -> appendTreeCode(writer)
+                ParserMode.STREAMING, ParserMode.TABLE -> appendStreamingCode(writer)
+            }
+        }
+
+        private fun appendTreeCode(writer: TextWriter) {
+            val validator = validatorFor(field, (field.type as ArrayType<*>).subtype)
             with(writer) {
                 validator.appendPreValidate(this)
                 append("List<$returnType> list = new ArrayList<>();").nextLine()
@@ -308,7 +648,7 @@ class ParserRenderer(definition: Definition,
                 with(writerForCatchBlock) {
                     append("for (int i = 0; i < array.length(); i++) {")
                     with(withIncreasedIndentation()) {
-                        appendParsingFieldBlock(field.type, validator)
+                        appendParsingFieldBlock(inferValueSource(field, field.type.subtype, "i", "array"), validator)
                     }
                     append("}")
                 }
@@ -320,8 +660,35 @@ class ParserRenderer(definition: Definition,
             }
         }
 
-        private fun TextWriter.appendParsingFieldBlock(type: ArrayType<*>, validator: ValidatorRenderer<*>) {
-            append("$returnType value = ${inferValueSource(field, type.subtype, "i", "array")};").nextLine()
+        private fun appendStreamingCode(writer: TextWriter) {
+            val validator = validatorFor(field, (field.type as ArrayType<*>).subtype)
+            with(writer) {
+                validator.appendPreValidate(this)
+                append("List<$returnType> list = new ArrayList<>();").nextLine()
+                append("reader.beginArray();").nextLine()
+                var writerForCatchBlock = this
+                if (isNeedUseCatchParsingBlock(field.type.subtype)) {
+                    append("try {")
+                    writerForCatchBlock = withIncreasedIndentation()
+                }
+                with(writerForCatchBlock) {
+                    append("while (reader.hasNext()) {")
+                    with(withIncreasedIndentation()) {
+                        appendParsingFieldBlock(inferStreamingValueSource(field, field.type.subtype), validator)
+                    }
+                    append("}")
+                }
+                if (isNeedUseCatchParsingBlock(field.type.subtype)) {
+                    appendStreamingCatchBlock(this)
+                }
+                nextLine()
+                append("reader.endArray();").nextLine()
+                append("return list;")
+            }
+        }
+
+        private fun TextWriter.appendParsingFieldBlock(valueSource: String, validator: ValidatorRenderer<*>) {
+            append("$returnType value = $valueSource;").nextLine()
             validator.doIfValidate(this) {
                 append("list.add(value);")
             } otherwise {
@@ -346,6 +713,23 @@ class ParserRenderer(definition: Definition,
             }
             textWriter.append("}")
         }
+
+        private fun appendStreamingCatchBlock(textWriter: TextWriter) {
+            textWriter.append(streamingCatchClause())
+            with(textWriter.withIncreasedIndentation()) {
+                if (field.absenceHandler is RequiredHandler) {
+                    append("mAnalyticsSender.sendParsingConfigError(\"${field.name.rawText}\", \"bad_value\", \"configuration_not_accepted\");")
+                    nextLine()
+                    append("throw new RequiredFieldException(\"${field.name.rawText}\");")
+                } else {
+                    append("mAnalyticsSender.sendParsingConfigError(\"${field.name.rawText}\", \"bad_type\", \"default_substituted\");").nextLine()
+                    append("while (reader.hasNext()) {")
+                    withIncreasedIndentation().append("reader.skipValue();")
+                    append("}")
+                }
+            }
+            textWriter.append("}")
+        }
     }
 
     class ParseFreeObjectMethod(private val subtype: Type<*>,
@@ -353,15 +737,26 @@ class ParserRenderer(definition: Definition,
                                 private val definition: Definition,
                                 name: String,
                                 returnType: String,
-                                privacy: Privacy) : ParseMethod(name, returnType, privacy) {
+                                privacy: Privacy,
+                                context: ParseContext) : ParseMethod(name, returnType, privacy, context) {
 
         override fun collectWrittenFields(): List<Field<*>> = definition.fields
 
         override fun appendMethodHeader(writer: TextWriter) {
-            writer.append("${privacy.syntax} $returnType $name(JSONObject json) throws JSONException, RequiredFieldException")
+            when (mode) {
+                ParserMode.TREE -> writer.append("${privacy.syntax} $returnType $name(JSONObject json) throws JSONException, RequiredFieldException")
+                ParserMode.STREAMING, ParserMode.TABLE -> writer.appendStreamingMethodHeader(returnType)
+            }
         }
 
         override fun appendCode(writer: TextWriter) {
+            when (mode) {
+                ParserMode.TREE -> appendTreeCode(writer)
+                ParserMode.STREAMING, ParserMode.TABLE -> appendStreamingCode(writer)
+            }
+        }
+
+        private fun appendTreeCode(writer: TextWriter) {
             with(writer) {
                 append("$returnType map = new HashMap<>();").nextLine()
                 append("Iterator<String> iter = json.keys();").nextLine()
@@ -374,6 +769,21 @@ class ParserRenderer(definition: Definition,
                 append("return map;")
             }
         }
+
+        private fun appendStreamingCode(writer: TextWriter) {
+            with(writer) {
+                append("$returnType map = new HashMap<>();").nextLine()
+                append("reader.beginObject();").nextLine()
+                append("while (reader.hasNext()) {")
+                with(withIncreasedIndentation()) {
+                    append("String key = reader.nextName();").nextLine()
+                    append("map.put(key, ${inferStreamingValueSource(field, subtype)});")
+                }
+                append("}").nextLine()
+                append("reader.endObject();").nextLine()
+                append("return map;")
+            }
+        }
     }
 
 
@@ -381,30 +791,93 @@ class ParserRenderer(definition: Definition,
                                   name: String,
                                   returnType: String,
                                   privacy: Privacy,
+                                  context: ParseContext,
                                   private val implementationName: String = returnType + "Impl")
-        : ParseMethod(name, returnType, privacy) {
+        : ParseMethod(name, returnType, privacy, context) {
 
         override fun collectWrittenFields(): List<Field<*>> = definition.fields
 
         override fun appendMethodHeader(writer: TextWriter) {
-            writer.append("${privacy.syntax} $returnType $name(JSONObject json) throws JSONException, RequiredFieldException")
+            when (mode) {
+                ParserMode.TREE -> writer.append("${privacy.syntax} $returnType $name(JSONObject json) throws JSONException, RequiredFieldException")
+                ParserMode.STREAMING, ParserMode.TABLE -> writer.appendStreamingMethodHeader(returnType)
+            }
         }
 
         override fun appendCode(writer: TextWriter) {
+            when (mode) {
+                ParserMode.TREE -> appendTreeCode(writer)
+                ParserMode.STREAMING, ParserMode.TABLE -> appendStreamingCode(writer)
+            }
+        }
+
+        /*
+        * Fields that do not fit the method budget are parsed by a chain of chunk methods, each one calls the next
+        * after its own fields. Null when the fields fit into this method.
+        */
+        private val chunks: List<List<Field<*>>>? by lazy {
+            val budget = context.budget
+            if (budget.fits(definition.fields.sumBy { fieldBytes(it) })) null else budget.chunks(definition.fields) { fieldBytes(it) }
+        }
+
+        private val requiredFields = definition.fields.filter { it.absenceHandler is RequiredHandler }
+
+        override fun render(writer: TextWriter) {
+            super.render(writer)
+            chunks?.forEachIndexed { i, chunk ->
+                writer.nextLine(2)
+                when (mode) {
+                    ParserMode.TREE -> appendTreeChunk(writer, i, chunk)
+                    ParserMode.STREAMING, ParserMode.TABLE -> appendStreamingChunk(writer, i, chunk)
+                }
+            }
+        }
+
+        private fun appendTreeCode(writer: TextWriter) {
             with(writer) {
                 append("$implementationName obj = new $implementationName();").nextLine()
-                definition.fields.forEach { field ->
-                    val validator = getValidator(field, field.type)
+                if (chunks == null) {
+                    appendTreeFields(this, definition.fields)
+                } else {
+                    append("${chunkName(0)}(json, obj);").nextLine()
+                }
+                append("return obj;")
+            }
+        }
+
+        private fun appendTreeChunk(writer: TextWriter, index: Int, fields: List<Field<*>>) {
+            with(writer) {
+                append("private void ${chunkName(index)}(JSONObject json, $implementationName obj) throws JSONException, RequiredFieldException {")
+                with(withIncreasedIndentation()) {
+                    appendTreeFields(this, fields)
+                    if (index != chunks!!.size - 1) {
+                        append("${chunkName(index + 1)}(json, obj);")
+                    }
+                }
+                append("}")
+            }
+        }
+
+        private fun appendTreeFields(writer: TextWriter, fields: List<Field<*>>) {
+            with(writer) {
+                fields.forEach { field ->
+                    if (context.lazySubtrees && context.model.node(field).lazySubtree) {
+                        appendLazySubtreeBlock(field)
+                        nextLine()
+                        return@forEach
+                    }
+                    val validator = validatorFor(field, field.type)
                     append("if (json.has(\"${field.name.asJsonFieldName()}\")) {")
                     with(withIncreasedIndentation()) {
-                        append("${inferFieldTypeName(field.name, field.type)} value;").nextLine()
+                        append("${inferFieldTypeName(field.name, field.type, context.fieldStorage)} value;").nextLine()
                         var writerForCatchBlock = this
                         if (isNeedUseCatchParsingBlock(field.type)) {
                             append("try {")
                             writerForCatchBlock = withIncreasedIndentation()
                         }
                         with(writerForCatchBlock) {
-                            appendFieldParsingBlock(validator, field)
+                            appendFieldParsingBlock(validator, field,
+                                    inferValueSource(field, field.type, "\"${field.name.asJsonFieldName()}\"", "json"))
                         }
                         if (isNeedUseCatchParsingBlock(field.type)) {
                             appendCatchBlock(field)
@@ -416,13 +889,147 @@ class ParserRenderer(definition: Definition,
                     }
                     nextLine()
                 }
+            }
+        }
+
+        private fun appendStreamingCode(writer: TextWriter) {
+            with(writer) {
+                append("$implementationName obj = new $implementationName();").nextLine()
+                if (chunks == null) {
+                    requiredFields.forEach {
+                        append("boolean ${it.presenceFlagName()} = false;").nextLine()
+                    }
+                } else if (requiredFields.isNotEmpty()) {
+                    append("boolean[] present = new boolean[${requiredFields.size}];").nextLine()
+                }
+                append("reader.beginObject();").nextLine()
+                append("while (reader.hasNext()) {")
+                with(withIncreasedIndentation()) {
+                    if (chunks == null) {
+                        appendStreamingSwitch(this, "reader.nextName()", definition.fields, "reader.skipValue();")
+                    } else {
+                        append("${chunkName(0)}(reader, reader.nextName(), obj${presenceArgument()});")
+                    }
+                }
+                append("}").nextLine()
+                append("reader.endObject();").nextLine()
+                requiredFields.forEach {
+                    append("if (!${it.presenceFlagName()}) {")
+                    with(withIncreasedIndentation()) {
+                        append("mAnalyticsSender.sendParsingConfigError(\"${it.name.rawText}\", \"bad_value\", \"configuration_not_accepted\");")
+                        nextLine()
+                        append("throw new RequiredFieldException(\"${it.name.rawText}\");")
+                    }
+                    append("}").nextLine()
+                }
                 append("return obj;")
             }
         }
 
-        private fun TextWriter.appendFieldParsingBlock(validator: ValidatorRenderer<*>, field: Field<*>) {
+        private fun appendStreamingChunk(writer: TextWriter, index: Int, fields: List<Field<*>>) {
+            val presenceParameter = if (requiredFields.isEmpty()) "" else ", boolean[] present"
+            val default = if (index == chunks!!.size - 1) "reader.skipValue();" else "${chunkName(index + 1)}(reader, key, obj${presenceArgument()});"
+            with(writer) {
+                append("private void ${chunkName(index)}(JsonReader reader, String key, $implementationName obj$presenceParameter) throws IOException, RequiredFieldException {")
+                appendStreamingSwitch(withIncreasedIndentation(), "key", fields, default)
+                append("}")
+            }
+        }
+
+        private fun appendStreamingSwitch(writer: TextWriter, key: String, fields: List<Field<*>>, default: String) {
+            with(writer) {
+                append("switch ($key) {")
+                with(withIncreasedIndentation()) {
+                    fields.forEach { field ->
+                        append("case \"${field.name.asJsonFieldName()}\": {")
+                        with(withIncreasedIndentation()) {
+                            if (field.absenceHandler is RequiredHandler) {
+                                append("${field.presenceFlagName()} = true;").nextLine()
+                            }
+                            append("${inferFieldTypeName(field.name, field.type, context.fieldStorage)} value;").nextLine()
+                            var writerForCatchBlock = this
+                            if (isNeedUseCatchParsingBlock(field.type)) {
+                                append("try {")
+                                writerForCatchBlock = withIncreasedIndentation()
+                            }
+                            with(writerForCatchBlock) {
+                                appendFieldParsingBlock(validatorFor(field, field.type), field,
+                                        inferStreamingValueSource(field, field.type))
+                            }
+                            if (isNeedUseCatchParsingBlock(field.type)) {
+                                appendStreamingCatchBlock(field)
+                            }
+                            nextLine()
+                            append("break;")
+                        }
+                        append("}").nextLine()
+                    }
+                    append("default: {")
+                    withIncreasedIndentation().append(default)
+                    append("}")
+                }
+                append("}")
+            }
+        }
+
+        private fun chunkName(index: Int) = "${name}Fields$index"
+
+        private fun presenceArgument() = if (requiredFields.isEmpty()) "" else ", present"
+
+        /*
+        * Rough bytecode size of parsing a field, its validation and error reporting included.
+        */
+        private fun fieldBytes(field: Field<*>): Int {
+            var bytes = if (isNeedUseCatchParsingBlock(field.type)) SCALAR_FIELD_BYTES else OBJECT_FIELD_BYTES
+            if (mode == ParserMode.STREAMING) {
+                bytes += CASE_BYTES
+            }
+            if (field.validator != null) {
+                bytes += CHECK_BYTES
+            }
+            if (field.absenceHandler is RequiredHandler) {
+                bytes += CHECK_BYTES
+            }
+            return bytes
+        }
+
+        /*
+        * The subtree is converted on the first getter call. It can't contain required fields, so a failure
+        * there only substitutes the default, as a bad type of an optional field would.
+        */
+        private fun TextWriter.appendLazySubtreeBlock(field: Field<*>) {
+            val typeName = inferFieldTypeName(field.name, field.type)
+            val jsonName = field.name.asJsonFieldName()
+            val default = (field.absenceHandler as? SubstituteWithDefaultHandler<*>)?.defaultValue
+            append("if (json.has(\"$jsonName\")) {")
+            with(withIncreasedIndentation()) {
+                append("obj.${field.name.asSetterName()}Lazy(new LazySubtree<$typeName>(json.getJSONObject(\"$jsonName\")) {")
+                with(withIncreasedIndentation()) {
+                    append("@Override").nextLine()
+                    append("protected $typeName parse(JSONObject source) {")
+                    with(withIncreasedIndentation()) {
+                        append("try {")
+                        withIncreasedIndentation().append("return ${inferParseFuncName(field)}(source);")
+                        append("} catch (JSONException | RequiredFieldException e) {")
+                        with(withIncreasedIndentation()) {
+                            append("mAnalyticsSender.sendParsingConfigError(\"${field.name.rawText}\", \"bad_type\", \"default_substituted\");").nextLine()
+                            append("return ${if (default is EmptyObject) "new ${typeName}Impl()" else "null"};")
+                        }
+                        append("}")
+                    }
+                    append("}")
+                }
+                append("});")
+            }
+            append("}")
+        }
+
+        private fun Field<*>.presenceFlagName() =
+                if (chunks == null) "has${name.asClassName()}" else "present[${requiredFields.indexOf(this)}]"
+
+        private fun TextWriter.appendFieldParsingBlock(validator: ValidatorRenderer<*>, field: Field<*>, valueSource: String) {
             validator.appendPreValidate(this)
-            append("value = ${inferValueSource(field, field.type, "\"${field.name.asJsonFieldName()}\"", "json")};").nextLine()
+            append("value = $valueSource;").nextLine()
             validator.doIfValidate(this) {
                 append("obj.${field.name.asSetterName()}(value);")
             }
@@ -459,9 +1066,66 @@ class ParserRenderer(definition: Definition,
             }
             append("}")
         }
+
+        private fun TextWriter.appendStreamingCatchBlock(field: Field<*>) {
+            append(streamingCatchClause())
+            with(withIncreasedIndentation()) {
+                if (field.absenceHandler is RequiredHandler) {
+                    append("mAnalyticsSender.sendParsingConfigError(\"${field.name.rawText}\", \"bad_value\", \"configuration_not_accepted\");")
+                    nextLine()
+                    append("throw new RequiredFieldException(\"${field.name.rawText}\");")
+                } else {
+                    append("reader.skipValue();").nextLine()
+                    append("mAnalyticsSender.sendParsingConfigError(\"${field.name.rawText}\", \"bad_type\", \"default_substituted\");")
+                }
+            }
+            append("}")
+        }
+    }
+
+    private companion object {
+        const val SCALAR_FIELD_BYTES = 70
+
+        const val OBJECT_FIELD_BYTES = 40
+
+        const val CASE_BYTES = 30
+
+        const val CHECK_BYTES = 30
     }
 
     enum class Privacy(val syntax: String) {
         PUBLIC("public"), PRIVATE("private")
     }
-}
\ No newline at end of file
+}
+
+class ParseContext(val model: SchemaModel,
+                   val mode: ParserMode,
+                   val validators: ValidatorTable,
+                   val fieldStorage: FieldStorage,
+                   val lazySubtrees: Boolean = false,
+                   val budget: MethodBudget = MethodBudget(),
+                   val tables: ParseTables? = null) {
+
+    val split: Boolean get() = model.layout == ClassLayout.SPLIT
+
+    fun withMode(mode: ParserMode) = ParseContext(model, mode, validators, fieldStorage, lazySubtrees && mode == ParserMode.TREE,
+            budget, if (mode == ParserMode.TREE) null else tables)
+}
+
+enum class ParserMode {
+    /*
+    * Parses a prebuilt org.json JSONObject tree.
+    */
+    TREE,
+
+    /*
+    * Reads the JsonReader token stream once, without building an intermediate tree.
+    */
+    STREAMING,
+
+    /*
+    * Reads the JsonReader token stream like STREAMING, but with one shared loop driven by a static table of the
+    * fields of every object instead of a method unrolled per object. Smaller code, fewer methods to warm up.
+    */
+    TABLE
+}
@@ -0,0 +1,292 @@
+package ru.mail.condef.renderer
+
+import ru.mail.condef.dsl.*
+import java.util.*
+
+/*
+* Definition resolved once per generation run: every object and field of the tree with its generated names,
+* parent link and ordinal. Renderers take names, nested classes and dependencies from here instead of walking
+* the DSL on their own. The definition is checked when the model is built.
+*/
+class SchemaModel(val definition: Definition, val layout: ClassLayout = ClassLayout.NESTED) {
+
+    private val objectsByDefinition = IdentityHashMap<Definition, ObjectNode>()
+    private val fieldsByField = IdentityHashMap<Field<*>, FieldNode>()
+    private val allObjects = mutableListOf<ObjectNode>()
+    private val allFields = mutableListOf<FieldNode>()
+
+    val root: ObjectNode = ObjectNode(this, definition, null, null, "")
+
+    /*
+    * Every object of the tree, nested classes and multi object variants included, in definition order.
+    */
+    val objects: List<ObjectNode> get() = allObjects
+
+    /*
+    * Every field of the tree in definition order.
+    */
+    val fields: List<FieldNode> get() = allFields
+
+    val containsMultiObjects: Boolean = allFields.any { it.variants.isNotEmpty() }
+
+    init {
+        performChecks(checkedFields())
+    }
+
+    /*
+    * A definition or field instance reused in several places of the tree resolves to its first occurrence,
+    * which is enough for everything that does not depend on the parent.
+    */
+    fun node(field: Field<*>): FieldNode =
+            fieldsByField[field] ?: throw IllegalArgumentException("Field `${field.name.rawText}` is not part of the definition")
+
+    fun node(definition: Definition): ObjectNode =
+            objectsByDefinition[definition] ?: throw IllegalArgumentException("Definition is not part of the model")
+
+    /*
+    * Static imports of every nested interface and implementation class, so generated code outside the
+    * entity files can refer to them by simple names.
+    */
+    fun nestedTypeImports(packageName: String, interfaceName: String, implementationName: String): List<String> =
+            if (layout == ClassLayout.SPLIT) emptyList() else objects.flatMap {
+                listOf("static $packageName.${it.interfacePath(interfaceName)}.*",
+                        "static $packageName.${it.implementationPath(implementationName)}.*")
+            }
+
+    internal fun register(node: ObjectNode) {
+        allObjects.add(node)
+        objectsByDefinition.putIfAbsent(node.definition, node)
+    }
+
+    internal fun register(node: FieldNode) {
+        allFields.add(node)
+        fieldsByField.putIfAbsent(node.field, node)
+    }
+
+    /*
+    * Fields the name checks apply to: nested strict objects and multi object fields are followed,
+    * variants of arrays are not.
+    */
+    private fun checkedFields(): List<Field<*>> =
+            mutableListOf<Field<*>>().also { collectCheckedFields(root, it) }
+
+    private fun collectCheckedFields(node: ObjectNode, fields: MutableList<Field<*>>) {
+        node.fields.forEach {
+            fields.add(it.field)
+            if (it.type is MultiObjectType) {
+                it.variants.values.forEach { variant -> collectCheckedFields(variant, fields) }
+            } else {
+                it.objectNode?.let { child -> collectCheckedFields(child, fields) }
+            }
+        }
+    }
+
+    private fun performChecks(fields: List<Field<*>>) {
+        checkUniqueClassNames(fields)
+        checkReservedWordsCollisions(fields)
+        checkUniqueParseMethodNames(fields)
+        checkUnsupportedRecursionTypes<ArrayType<*>>(fields)
+        checkUnsupportedRecursionTypes<FreeObjectType>(fields)
+        if (layout == ClassLayout.SPLIT) {
+            checkUniqueTopLevelNames()
+        }
+    }
+
+    /*
+    * Nested classes only need unique names within their parent, top level ones share the package.
+    */
+    private fun checkUniqueTopLevelNames() {
+        (objects.filter { !it.isRoot }.map { it.className } + fields.filter { it.variants.isNotEmpty() }.map { "${it.className}Base" })
+                .groupBy { it }
+                .asIterable()
+                .firstNonSingle()
+                ?.let {
+                    throw IllegalStateException("Duplicate top level class `${it.key}`, specify custom class name using `withClassName`")
+                }
+    }
+
+    private fun checkReservedWordsCollisions(fields: List<Field<*>>) {
+        fields
+                .firstOrNull { reservedJavaWords.contains(it.name.asFieldName()) }
+                ?.let {
+                    throw IllegalStateException("Generated field `${it.name.asFieldName()}` clashes with reserved Java keyword, specify different name using `withFieldName`")
+                }
+    }
+
+    private inline fun <reified T : CompositeType> checkUnsupportedRecursionTypes(fields: List<Field<*>>) {
+        fields
+                .firstOrNull { it.type is T && it.type.subtype is T }
+                ?.let {
+                    throw IllegalStateException("${T::class.java} of ${T::class.java} does not supported")
+                }
+    }
+
+    private fun checkUniqueClassNames(fields: List<Field<*>>) {
+        fields
+                .filter { it.type is StrictObjectType || (it.type is ArrayType<*> && it.type.subtype is StrictObjectType) }
+                .groupBy { it.name.asClassName() }
+                .asIterable()
+                .firstNonSingle()
+                ?.let {
+                    throw IllegalStateException("Duplicate generated ClassName in Field `${it.key}`, specify custom class name using `withClassName`")
+                }
+    }
+
+    private fun checkUniqueParseMethodNames(fields: List<Field<*>>) {
+        fields
+                .filter { it.type is StrictObjectType || (it.type is ArrayType<*> || it.type is FreeObjectType) }
+                .groupBy { it.name.asClassName() + it.type.javaClass.simpleName }
+                .asIterable()
+                .firstNonSingle()
+                ?.let {
+                    throw IllegalStateException("Duplicate generated Method name in Field `${it.key}`, specify custom class name using `withClassName`")
+                }
+    }
+
+    private fun <T : Map.Entry<*, Collection<*>>> Iterable<T>.firstNonSingle(): T? {
+        return this.firstOrNull { it.value.size > 1 }
+    }
+
+    companion object {
+        val reservedJavaWords = setOf("abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "default",
+                "do", "double", "else", "enum", "extends", "false", "final", "finally", "float", "for", "goto", "if", "implements",
+                "import", "instanceof", "int", "interface", "long", "native", "new", "null", "package", "private", "protected",
+                "public", "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+                "transient", "true", "try", "void", "volatile", "while", "continue")
+    }
+}
+
+/*
+* A generated class: the root, a nested strict object or a variant of a multi object. The root has an empty name,
+* its classes are named by the caller.
+*/
+class ObjectNode internal constructor(
+        model: SchemaModel,
+        val definition: Definition,
+        val parent: FieldNode?,
+        val variantKey: String?,
+        val className: String) {
+
+    val isRoot: Boolean get() = parent == null
+
+    val depth: Int = parent?.let { it.owner.depth + 1 } ?: 0
+
+    /*
+    * Classes of the root, and of every object in the SPLIT layout, are top level classes of their own files.
+    */
+    val isTopLevel: Boolean = parent == null || model.layout == ClassLayout.SPLIT
+
+    /*
+    * Variants are parsed from a buffered JSONObject, so are the objects nested in them.
+    */
+    val parsedFromTree: Boolean = variantKey != null || (parent?.owner?.parsedFromTree ?: false)
+
+    init {
+        model.register(this)
+    }
+
+    val fields: List<FieldNode> = definition.fields.mapIndexed { ordinal, field -> FieldNode(model, field, this, ordinal) }
+
+    val containsRequiredFields: Boolean = fields.any { field ->
+        field.field.absenceHandler is RequiredHandler || field.objects.any { it.containsRequiredFields }
+    }
+
+    fun interfaceName(rootInterfaceName: String): String = if (isRoot) rootInterfaceName else className
+
+    fun implementationName(rootImplementationName: String): String = if (isRoot) rootImplementationName else "${className}Impl"
+
+    /*
+    * Dotted path of the nested interface, starting with the root interface.
+    */
+    fun interfacePath(rootInterfaceName: String): String = when {
+        isTopLevel -> interfaceName(rootInterfaceName)
+        else -> "${parent!!.owner.interfacePath(rootInterfaceName)}.$className"
+    }
+
+    fun implementationPath(rootImplementationName: String): String = when {
+        isTopLevel -> implementationName(rootImplementationName)
+        else -> "${parent!!.owner.implementationPath(rootImplementationName)}.${className}Impl"
+    }
+}
+
+/*
+* A field of an object with its resolved names. `objectNode` is the class of a strict object, or of the elements
+* of an array or a map of them; `variants` are the classes of a multi object, or of an array of multi objects.
+*/
+class FieldNode internal constructor(
+        model: SchemaModel,
+        val field: Field<*>,
+        val owner: ObjectNode,
+        val ordinal: Int) {
+
+    val name: Field.Name get() = this.field.name
+
+    val type: Type<*> get() = this.field.type
+
+    val className: String = field.name.asClassName()
+
+    val fieldName: String = className.decapitalize()
+
+    val getterName: String = (if (field.type is BoolType) "is" else "get") + className
+
+    val setterName: String = "set$className"
+
+    val jsonName: String = field.name.asJsonFieldName()
+
+    val typeName: String = inferFieldTypeName(field.name, field.type)
+
+    fun typeName(storage: FieldStorage): String = when (storage) {
+        FieldStorage.BOXED -> typeName
+        FieldStorage.PACKED -> when (field.type) {
+            is IntegerType -> "int"
+            is LongType -> "long"
+            is BoolType -> "boolean"
+            else -> typeName
+        }
+    }
+
+    /*
+    * Dotted JSON path of the field from the root, variant keys included.
+    */
+    val jsonPath: String = owner.parent?.let {
+        val ownerPath = if (owner.variantKey != null) "${it.jsonPath}.${owner.variantKey}" else it.jsonPath
+        "$ownerPath.$jsonName"
+    } ?: jsonName
+
+    init {
+        model.register(this)
+    }
+
+    val objectNode: ObjectNode? = when (val objectType = elementType()) {
+        is StrictObjectType -> ObjectNode(model, objectType.definition, this, null, className)
+        else -> null
+    }
+
+    val variants: Map<String, ObjectNode> = when (val objectType = elementType()) {
+        is MultiObjectType -> objectType.types.entries.associateTo(LinkedHashMap()) {
+            it.key to ObjectNode(model, it.value, this, it.key, className + it.key.capitalize().toCamelCase())
+        }
+        else -> emptyMap()
+    }
+
+    /*
+    * Classes declared for this field, the strict object class or the variants.
+    */
+    val objects: List<ObjectNode> get() = objectNode?.let { listOf(it) } ?: variants.values.toList()
+
+    /*
+    * A strict object field the parser may leave unparsed until its getter is called. Subtrees with required
+    * fields stay eager, since a missing required value has to fail the whole configuration at parse time.
+    */
+    val lazySubtree: Boolean =
+            field.type is StrictObjectType && field.absenceHandler !is RequiredHandler && !objectNode!!.containsRequiredFields
+
+    private fun elementType(): Type<*>? = field.type.let { if (it is CompositeType) it.subtype else it }
+}
+
+/*
+* Where generated classes live. NESTED declares every object as a nested class of the root interface and
+* implementation, SPLIT writes each object, multi object base and subtree parser as a top level class
+* of its own, so only the classes of parsed subtrees are loaded and javac recompiles only changed files.
+*/
+enum class ClassLayout { NESTED, SPLIT }
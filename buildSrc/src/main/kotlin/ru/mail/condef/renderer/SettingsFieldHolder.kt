@@ -0,0 +1,63 @@
+package ru.mail.condef.renderer
+
+import ru.mail.condef.dsl.*
+
+/*
+* Fields of the generated settings holder: a reference to every settings field the mapper fills, named after
+* its path. Fields of free object templates are copied per entry and unsupported types are not mapped, neither
+* is held. The definition and the mapper renderers build it from the same model, so the names agree.
+*/
+class SettingsFieldHolder(model: SchemaModel) {
+
+    private val names = LinkedHashMap<FieldNode, String>()
+
+    val fields: List<FieldNode> get() = names.keys.toList()
+
+    init {
+        val usedNames = mutableSetOf(ROOT_NAME)
+        model.fields
+                .filter { isHeld(it) }
+                .forEach { names[it] = uniqueName(baseName(it), usedNames) }
+    }
+
+    fun contains(field: FieldNode): Boolean = names.containsKey(field)
+
+    fun name(field: FieldNode): String =
+            names[field] ?: throw IllegalArgumentException("Field `${field.jsonPath}` is not held by the settings holder")
+
+    fun typeName(field: FieldNode): String = when (field.type) {
+        is StringType -> "StringField"
+        is BoolType -> "BooleanField"
+        is IntegerType -> "IntegerField"
+        is LongType -> "LongField"
+        is StrictObjectType -> "StrictObjectField"
+        is FreeObjectType -> "FreeObjectField"
+        else -> throw IllegalArgumentException("Field `${field.jsonPath}` has no settings field type")
+    }
+
+    private fun isHeld(field: FieldNode): Boolean = when (field.type) {
+        is StringType, is BoolType, is IntegerType, is LongType, is StrictObjectType, is FreeObjectType ->
+            field.owner.parent?.let { it.type is StrictObjectType && isHeld(it) } ?: true
+        else -> false
+    }
+
+    private fun baseName(field: FieldNode): String =
+            field.owner.parent?.let { names[it] + field.className } ?: field.fieldName
+
+    private fun uniqueName(baseName: String, usedNames: MutableSet<String>): String {
+        var name = baseName
+        var index = 2
+        while (!usedNames.add(name)) {
+            name = "$baseName${index++}"
+        }
+        return name
+    }
+
+    companion object {
+        const val ROOT_NAME = "root"
+
+        const val CLASS_NAME = "Fields"
+
+        const val PARAMETER_NAME = "settingsFields"
+    }
+}
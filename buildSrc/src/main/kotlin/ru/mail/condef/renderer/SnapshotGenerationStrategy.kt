@@ -0,0 +1,459 @@
+package ru.mail.condef.renderer
+
+import ru.mail.condef.dsl.*
+
+/*
+* Immutable counterparts of the generated implementations. A snapshot is frozen once, by `of` or by its Builder,
+* and `mergedWith` returns a new snapshot that reuses every unchanged subtree instead of mutating the receiver.
+*/
+class SnapshotGenerationStrategy(
+        private val interfaceName: String,
+        private val snapshotName: String,
+        private val implName: String,
+        private val static: Boolean = true,
+        private val storage: FieldStorage = FieldStorage.BOXED) : CodeGenerationStrategy {
+
+    override val entityHeader: String
+        get() = "${if (static) "static " else ""}final class $snapshotName implements $interfaceName"
+
+    override val className: String
+        get() = interfaceName
+
+    override fun createRendersForFields(fields: List<FieldNode>): Collection<Renderer> {
+        val presence = PresenceFlags(fields, storage)
+        return fields.map { FieldRenderer(it, storage, "private final") } +
+                presence.declarations("private final") +
+                ConstructorRenderer(fields, presence) +
+                OfMethodRenderer() +
+                fields.map { GetterRenderer(it, storage, presence) }
+    }
+
+    override fun createRendersForDefinitions(objects: List<ObjectNode>): Collection<Renderer> {
+        return objects.map { createRendererForObject(it) }
+    }
+
+    override fun createRendererForObject(node: ObjectNode): Renderer {
+        val implementation = if (node.isTopLevel) "${node.className}Impl" else "$implName.${node.className}Impl"
+        val strategy = SnapshotGenerationStrategy(node.className, node.className + "Snapshot", implementation,
+                static = !node.isTopLevel, storage = storage)
+        return node.variantKey?.let { MultiObjectImplRenderer(node, strategy, it) }
+                ?: ConfigCodeRenderer.ContentsCodeRenderer(node, strategy)
+    }
+
+    override fun createRendersForMultiObjectDefinitions(fields: List<FieldNode>): Collection<Renderer> {
+        return fields.flatMap { field -> field.variants.values.map { createRendererForObject(it) } }
+    }
+
+    override fun createRendererForMerge(fields: List<FieldNode>, currentClassType: String): Renderer {
+        val presence = PresenceFlags(fields, storage)
+        return object : Renderer {
+            override fun render(writer: TextWriter) {
+                writer.join(listOf(MergedWithRenderer(fields, presence), BuilderRenderer(fields, presence)) +
+                        fields.flatMap { freezeHelpers(it, it.type) }) {
+                    nextLine(2)
+                }
+            }
+        }
+    }
+
+    private data class FieldRenderer(
+            private val field: FieldNode,
+            private val storage: FieldStorage,
+            private val modifiers: String) : Renderer {
+
+        override fun render(writer: TextWriter) {
+            writer.append("$modifiers ${snapshotFieldTypeName(field, storage)} m${field.className};")
+            if (storage == FieldStorage.BOXED) {
+                writer.nextLine()
+                writer.append("$modifiers boolean m${field.className}Set;")
+            }
+        }
+    }
+
+    private inner class ConstructorRenderer(
+            private val fields: List<FieldNode>,
+            private val presence: PresenceFlags) : Renderer {
+
+        override fun render(writer: TextWriter) {
+            writer.append("private $snapshotName(Builder builder) {")
+            with(writer.withIncreasedIndentation()) {
+                join((fields.map { "m${it.className} = builder.m${it.className};" } +
+                        presence.copyStatements("builder")).map { it.asRenderer() }) { nextLine() }
+            }
+            writer.append("}")
+        }
+    }
+
+    private inner class OfMethodRenderer : Renderer {
+        override fun render(writer: TextWriter) {
+            writer.append("public static $snapshotName of($interfaceName source) {")
+            with(writer.withIncreasedIndentation()) {
+                append("if (source == null || source instanceof $snapshotName) {")
+                withIncreasedIndentation().append("return ($snapshotName) source;")
+                append("}").nextLine()
+                append("return new Builder(source).build();")
+            }
+            writer.append("}")
+        }
+    }
+
+    private data class GetterRenderer(
+            private val field: FieldNode,
+            private val storage: FieldStorage,
+            private val presence: PresenceFlags) : Renderer {
+
+        override fun render(writer: TextWriter) {
+            writer.append("@Override").nextLine()
+            writer.append("public ${field.typeName(storage)} ${field.getterName}() {")
+            writer.withIncreasedIndentation().append("return m${field.className};")
+            writer.append("}").nextLine(2)
+
+            writer.append("@Override").nextLine()
+            writer.append("public boolean ${field.getterName}Set() {")
+            writer.withIncreasedIndentation().append("return ${presence.isSet(field)};")
+            writer.append("}")
+        }
+    }
+
+    private inner class MergedWithRenderer(
+            private val fields: List<FieldNode>,
+            private val presence: PresenceFlags) : Renderer {
+
+        override fun render(writer: TextWriter) {
+            writer.append("public $snapshotName mergedWith($interfaceName from) {")
+            with(writer.withIncreasedIndentation()) {
+                append("if (from == null) {")
+                withIncreasedIndentation().append("return this;")
+                append("}").nextLine()
+                append("Builder builder = null;").nextLine()
+                fields.forEach { field ->
+                    val className = field.className
+                    val getter = "from.${field.getterName}"
+                    if (field.type is StrictObjectType) {
+                        append("if (m$className != null) {")
+                        with(withIncreasedIndentation()) {
+                            append("${className}Snapshot merged$className = " +
+                                    "m$className.mergedWith($getter());").nextLine()
+                            append("if (merged$className != m$className) {")
+                            with(withIncreasedIndentation()) {
+                                append(ALLOCATE_BUILDER).nextLine()
+                                append("builder.m$className = merged$className;")
+                            }
+                            append("}")
+                        }
+                        append("}").nextLine()
+                    } else {
+                        append("if (!${presence.isSet(field)} && ${getter}Set()) {")
+                        with(withIncreasedIndentation()) {
+                            append(ALLOCATE_BUILDER).nextLine()
+                            append("builder.${field.setterName}($getter());")
+                        }
+                        append("}").nextLine()
+                    }
+                }
+                append("return builder != null ? builder.build() : this;")
+            }
+            writer.append("}")
+        }
+    }
+
+    private inner class BuilderRenderer(
+            private val fields: List<FieldNode>,
+            private val presence: PresenceFlags) : Renderer {
+
+        override fun render(writer: TextWriter) {
+            writer.append("public Builder toBuilder() {")
+            writer.withIncreasedIndentation().append("return new Builder(this);")
+            writer.append("}").nextLine(2)
+
+            writer.append("public static final class Builder {")
+            writer.withIncreasedIndentation()
+                    .join(fields.map { FieldRenderer(it, storage, "private") } +
+                            presence.declarations() +
+                            listOf(DefaultConstructorRenderer(), SourceConstructorRenderer(fields),
+                                    SnapshotConstructorRenderer(fields)) +
+                            fields.map { SetterRenderer(it) } +
+                            BuildMethodRenderer()) {
+                        nextLine(2)
+                    }
+            writer.append("}")
+        }
+
+        private inner class DefaultConstructorRenderer : Renderer {
+            override fun render(writer: TextWriter) {
+                writer.append("public Builder() {")
+                writer.withIncreasedIndentation().append("this(new $implName());")
+                writer.append("}")
+            }
+        }
+
+        private inner class SourceConstructorRenderer(private val fields: List<FieldNode>) : Renderer {
+            override fun render(writer: TextWriter) {
+                writer.append("public Builder($interfaceName source) {")
+                with(writer.withIncreasedIndentation()) {
+                    fields.forEachIndexed { index, field ->
+                        val getter = "source.${field.getterName}"
+                        if (index != 0) {
+                            nextLine()
+                        }
+                        append("m${field.className} = ${freezeExpression(field, field.type, "$getter()")};").nextLine()
+                        append("if (${getter}Set()) {")
+                        withIncreasedIndentation().append("${presence.markSet(field)};")
+                        append("}")
+                    }
+                }
+                writer.append("}")
+            }
+        }
+
+        private inner class SnapshotConstructorRenderer(private val fields: List<FieldNode>) : Renderer {
+            override fun render(writer: TextWriter) {
+                writer.append("private Builder($snapshotName source) {")
+                with(writer.withIncreasedIndentation()) {
+                    join((fields.map { "m${it.className} = source.m${it.className};" } +
+                            presence.copyStatements("source")).map { it.asRenderer() }) { nextLine() }
+                }
+                writer.append("}")
+            }
+        }
+
+        private inner class SetterRenderer(private val field: FieldNode) : Renderer {
+            override fun render(writer: TextWriter) {
+                writer.append("public Builder ${field.setterName}(" +
+                        "${field.typeName(storage)} ${field.fieldName}) {")
+                with(writer.withIncreasedIndentation()) {
+                    append("${presence.markSet(field)};").nextLine()
+                    append("m${field.className} = ${freezeExpression(field, field.type, field.fieldName)};").nextLine()
+                    append("return this;")
+                }
+                writer.append("}")
+            }
+        }
+
+        private inner class BuildMethodRenderer : Renderer {
+            override fun render(writer: TextWriter) {
+                writer.append("public $snapshotName build() {")
+                writer.withIncreasedIndentation().append("return new $snapshotName(this);")
+                writer.append("}")
+            }
+        }
+    }
+
+    /*
+    * Helpers copying mutable values of a field into their immutable form; snapshots pass through untouched.
+    */
+    private fun freezeHelpers(field: FieldNode, type: Type<*>): List<Renderer> = when (type) {
+        is MultiObjectType -> listOf(MultiObjectFreezeRenderer(field))
+        is ArrayType<*> -> listOf(ListFreezeRenderer(field, type)) + elementFreezeHelpers(field, type.subtype)
+        is FreeObjectType -> listOf(MapFreezeRenderer(field, type)) + elementFreezeHelpers(field, type.subtype!!)
+        else -> emptyList()
+    }
+
+    private fun elementFreezeHelpers(field: FieldNode, type: Type<*>): List<Renderer> = when (type) {
+        is MultiObjectType -> listOf(MultiObjectFreezeRenderer(field))
+        is ArrayType<*>, is FreeObjectType ->
+            throw IllegalStateException("Snapshots do not support nested collections in field `${field.jsonName}`")
+        else -> emptyList()
+    }
+
+    private fun isImmutable(type: Type<*>) =
+            type is StringType || type is IntegerType || type is LongType || type is BoolType
+
+    private fun freezeExpression(field: FieldNode, type: Type<*>, value: String): String = when (type) {
+        is StringType, is IntegerType, is LongType, is BoolType -> value
+        is StrictObjectType -> "${field.className}Snapshot.of($value)"
+        is MultiObjectType -> "freeze${field.className}Base($value)"
+        is ArrayType<*>, is FreeObjectType -> "freeze${field.className}($value)"
+    }
+
+    private inner class ListFreezeRenderer(private val field: FieldNode, private val type: ArrayType<*>) : Renderer {
+        override fun render(writer: TextWriter) {
+            val typeName = field.typeName
+            val elementTypeName = inferFieldTypeName(field.name, type.subtype)
+            writer.append("private static $typeName freeze${field.className}($typeName value) {")
+            with(writer.withIncreasedIndentation()) {
+                append("if (value == null) {")
+                withIncreasedIndentation().append("return null;")
+                append("}").nextLine()
+                if (isImmutable(type.subtype)) {
+                    append("return Collections.unmodifiableList(new ArrayList<>(value));")
+                } else {
+                    append("$typeName copy = new ArrayList<>(value.size());").nextLine()
+                    append("for ($elementTypeName element : value) {")
+                    withIncreasedIndentation().append("copy.add(${freezeExpression(field, type.subtype, "element")});")
+                    append("}").nextLine()
+                    append("return Collections.unmodifiableList(copy);")
+                }
+            }
+            writer.append("}")
+        }
+    }
+
+    private inner class MapFreezeRenderer(private val field: FieldNode, private val type: FreeObjectType) : Renderer {
+        override fun render(writer: TextWriter) {
+            val typeName = field.typeName
+            val elementTypeName = inferFieldTypeName(field.name, type.subtype!!)
+            writer.append("private static $typeName freeze${field.className}($typeName value) {")
+            with(writer.withIncreasedIndentation()) {
+                append("if (value == null) {")
+                withIncreasedIndentation().append("return null;")
+                append("}").nextLine()
+                if (isImmutable(type.subtype)) {
+                    append("return Collections.unmodifiableMap(new HashMap<>(value));")
+                } else {
+                    append("$typeName copy = new HashMap<>();").nextLine()
+                    append("for (Map.Entry<String, $elementTypeName> entry : value.entrySet()) {")
+                    withIncreasedIndentation()
+                            .append("copy.put(entry.getKey(), ${freezeExpression(field, type.subtype, "entry.getValue()")});")
+                    append("}").nextLine()
+                    append("return Collections.unmodifiableMap(copy);")
+                }
+            }
+            writer.append("}")
+        }
+    }
+
+    private inner class MultiObjectFreezeRenderer(private val field: FieldNode) : Renderer {
+        override fun render(writer: TextWriter) {
+            val baseName = field.className
+            writer.append("private static ${baseName}Base freeze${baseName}Base(${baseName}Base value) {")
+            with(writer.withIncreasedIndentation()) {
+                append("if (value == null) {")
+                withIncreasedIndentation().append("return null;")
+                append("}").nextLine()
+                append("return value.accept(new ${baseName}Base.Visitor<${baseName}Base>() {")
+                withIncreasedIndentation().join(field.variants.map { (key, variant) ->
+                    val variantName = variant.className
+                    object : Renderer {
+                        override fun render(writer: TextWriter) {
+                            writer.append("@Override").nextLine()
+                            writer.append("public ${baseName}Base on${key.capitalize().toCamelCase()}($variantName dto) {")
+                            writer.withIncreasedIndentation().append("return ${variantName}Snapshot.of(dto);")
+                            writer.append("}")
+                        }
+                    }
+                }) { nextLine(2) }
+                append("});")
+            }
+            writer.append("}")
+        }
+    }
+
+    companion object {
+        /* the Builder is only created once a field of `from` changes the snapshot */
+        private const val ALLOCATE_BUILDER = "builder = builder != null ? builder : new Builder(this);"
+    }
+}
+
+private fun snapshotFieldTypeName(field: FieldNode, storage: FieldStorage): String = when (field.type) {
+    is StrictObjectType -> "${field.className}Snapshot"
+    else -> field.typeName(storage)
+}
+
+private fun String.asRenderer(): Renderer = object : Renderer {
+    override fun render(writer: TextWriter) {
+        writer.append(this@asRenderer)
+    }
+}
+
+/*
+* Lock-free holder of the current snapshot. Every publication bumps the version, readers only do a volatile read.
+*/
+class SnapshotStoreRenderer(
+        model: SchemaModel,
+        packageName: String,
+        private val storeName: String,
+        private val snapshotName: String,
+        private val interfaceName: String) : JavaCodeRenderer(model, packageName) {
+
+    override fun listDependencies(): List<String> =
+            super.listDependencies() + "java.util.concurrent.atomic.AtomicReference"
+
+    override fun render(writer: TextWriter) {
+        super.render(writer)
+        with(writer) {
+            nextLine()
+            append("public final class $storeName {")
+            withIncreasedIndentation().join(listOf(
+                    """
+                    private final AtomicReference<Versioned> mCurrent;
+                    """,
+                    """
+                    public $storeName() {
+                        this(new $snapshotName.Builder().build());
+                    }
+                    """,
+                    """
+                    public $storeName($interfaceName initial) {
+                        mCurrent = new AtomicReference<>(new Versioned(0, $snapshotName.of(initial)));
+                    }
+                    """,
+                    """
+                    public $snapshotName get() {
+                        return mCurrent.get().getSnapshot();
+                    }
+                    """,
+                    """
+                    public Versioned current() {
+                        return mCurrent.get();
+                    }
+                    """,
+                    """
+                    public long publish($interfaceName configuration) {
+                        $snapshotName snapshot = $snapshotName.of(configuration);
+                        while (true) {
+                            Versioned current = mCurrent.get();
+                            Versioned next = new Versioned(current.getVersion() + 1, snapshot);
+                            if (mCurrent.compareAndSet(current, next)) {
+                                return next.getVersion();
+                            }
+                        }
+                    }
+                    """,
+                    """
+                    public long merge($interfaceName from) {
+                        while (true) {
+                            Versioned current = mCurrent.get();
+                            $snapshotName merged = current.getSnapshot().mergedWith(from);
+                            if (merged == current.getSnapshot()) {
+                                return current.getVersion();
+                            }
+                            Versioned next = new Versioned(current.getVersion() + 1, merged);
+                            if (mCurrent.compareAndSet(current, next)) {
+                                return next.getVersion();
+                            }
+                        }
+                    }
+                    """,
+                    """
+                    public static final class Versioned {
+                        private final long mVersion;
+                        private final $snapshotName mSnapshot;
+
+                        Versioned(long version, $snapshotName snapshot) {
+                            mVersion = version;
+                            mSnapshot = snapshot;
+                        }
+
+                        public long getVersion() {
+                            return mVersion;
+                        }
+
+                        public $snapshotName getSnapshot() {
+                            return mSnapshot;
+                        }
+                    }
+                    """
+            ).map { it.asBlockRenderer() }) {
+                nextLine(2)
+            }
+            append("}")
+        }
+    }
+
+    private fun String.asBlockRenderer(): Renderer = object : Renderer {
+        override fun render(writer: TextWriter) {
+            writer.join(this@asBlockRenderer.trimIndent().lines().map { it.asRenderer() }) { nextLine() }
+        }
+    }
+}
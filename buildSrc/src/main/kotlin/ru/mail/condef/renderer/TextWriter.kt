@@ -1,24 +1,32 @@
 package ru.mail.condef.renderer
 
-class TextWriter(private val indentation: Int = 0) {
+/*
+* Lines are streamed into the sink as soon as they are committed, nested writers write into the same sink.
+* A nested writer stays open until its parent commits the next line, writing into it after that is an error,
+* since its text has already been followed by the parent's one.
+*/
+class TextWriter private constructor(private val sink: Sink, private val indentation: Int) {
 
-    private val lines = mutableListOf<Any>()
-    private val line = StringBuilder()
+    constructor(out: Appendable = StringBuilder()) : this(Sink(out), 0)
 
-    init {
-        line.append(" ".repeat(indentation))
-    }
+    private val prefix = indent(indentation)
+    private val line = StringBuilder()
+    private var child: TextWriter? = null
+    private var closed = false
 
-    fun newWriter() = TextWriter(indentation)
+    fun newWriter() = TextWriter(Sink(StringBuilder()), indentation)
 
     fun withIncreasedIndentation(): TextWriter {
         nextLine()
-        val writer = TextWriter(indentation + Constants.INDENTATION_STEP)
-        lines.add(writer)
+        val writer = TextWriter(sink, indentation + Constants.INDENTATION_STEP)
+        child = writer
         return writer
     }
 
-    fun append(append: String): TextWriter = apply { line.append(append) }
+    fun append(append: String): TextWriter = apply {
+        checkOpen()
+        line.append(append)
+    }
 
     fun appendLine(append: String): TextWriter = apply { nextLine().append(append) }
 
@@ -35,27 +43,67 @@ class TextWriter(private val indentation: Int = 0) {
     }
 
     fun nextLine(linesToAdd: Int = 1): TextWriter = apply {
+        checkOpen()
         for (i in 0..(linesToAdd - 1)) {
             commitLine()
-            initNewLine()
         }
     }
 
-    private fun commitLine() {
-        lines.add(line.toString())
+    /*
+    * Commits the current line of this writer and of every nested one. Nothing can be appended afterwards.
+    */
+    fun close() {
+        if (!closed) {
+            commitLine()
+            closed = true
+        }
+    }
+
+    override fun toString(): String {
+        close()
+        return sink.out.toString()
+    }
+
+    private fun checkOpen() {
+        if (closed) {
+            throw IllegalStateException("Writer is closed, its parent has already written the following lines")
+        }
     }
 
-    private fun initNewLine() {
+    private fun commitLine() {
+        child?.close()
+        child = null
+        sink.writeLine(prefix, line)
         line.setLength(0)
-        line.append(" ".repeat(indentation))
     }
 
-    override fun toString(): String {
-        commitLine()
-        return lines.joinToString("\n")
+    private class Sink(val out: Appendable) {
+        private var empty = true
+
+        fun writeLine(prefix: String, line: CharSequence) {
+            if (!empty) {
+                out.append('\n')
+            }
+            empty = false
+            out.append(prefix).append(line)
+        }
     }
 
     companion object Constants {
         private const val INDENTATION_STEP: Int = 4
+
+        private val indents = mutableListOf("")
+
+        /*
+        * Indentation prefixes are shared by all writers, each width is built once rather than for every line.
+        */
+        private fun indent(width: Int): String {
+            synchronized(indents) {
+                while (indents.size <= width) {
+                    indents.add(" ".repeat(indents.size))
+                }
+                return indents[width]
+            }
+        }
     }
 }
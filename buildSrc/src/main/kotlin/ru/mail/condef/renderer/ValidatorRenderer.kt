@@ -2,22 +2,65 @@ package ru.mail.condef.renderer
 
 import ru.mail.condef.dsl.*
 
-fun getValidator(field: Field<*>, type: Type<*>): ValidatorRenderer<*> {
-    return when(type) {
-        is ArrayType<*> -> StubValidator()
-        else -> when(field.validator) {
+/*
+* Validators of the whole definition. Identical validators share one renderer, and all of them keep
+* their state in static members of the generated class, so parse methods never rebuild it. Members are declared
+* with the given modifiers, a base class shares them with its subclasses.
+*/
+class ValidatorTable(model: SchemaModel, private val modifiers: String = "private static") {
+
+    private val renderers = LinkedHashMap<String, ValidatorRenderer<*>>()
+    private val usedNames = mutableSetOf<String>()
+
+    init {
+        model.fields.forEach {
+            val type = it.type
+            validatorFor(it.field, if (type is ArrayType<*>) type.subtype else type)
+        }
+    }
+
+    val declarations: List<Renderer>
+        get() = renderers.values.mapNotNull { it.declaration() }
+
+    val helpers: List<Renderer>
+        get() = renderers.values.mapNotNull { it.helper() }
+
+    fun validatorFor(field: Field<*>, type: Type<*>): ValidatorRenderer<*> {
+        if (type is ArrayType<*>) {
+            return StubValidator()
+        }
+        val validator = field.validator
+        return when (validator) {
             null -> StubValidator()
-            is SpecialValuesValidator<*> -> SpecialValuesValidatorRenderer(field.validator)
-            is RegexValidator -> RegexValidatorRenderer(field.validator)
-            is RangeValidator -> RangeValidatorRenderer(field.validator)
+            is RangeValidator -> RangeValidatorRenderer(validator)
+            is SpecialValuesValidator<*> -> renderers.getOrPut("values:${validator.values}") {
+                SpecialValuesValidatorRenderer(validator, uniqueName(field, "allowed"), modifiers)
+            }
+            is RegexValidator -> renderers.getOrPut("regex:${validator.pattern}") {
+                RegexValidatorRenderer(validator, uniqueName(field, "pattern"), modifiers)
+            }
         }
     }
+
+    private fun uniqueName(field: Field<*>, suffix: String): String {
+        val baseName = "${field.name.asClassName()}_$suffix".toConstantCase()
+        var name = baseName
+        var index = 2
+        while (!usedNames.add(name)) {
+            name = "${baseName}_${index++}"
+        }
+        return name
+    }
 }
 
 abstract class ValidatorRenderer<out T>(val validator: T?) {
     abstract fun appendPreValidate(writer: TextWriter)
     abstract fun validationCondition(): String
 
+    open fun declaration(): Renderer? = null
+
+    open fun helper(): Renderer? = null
+
     open fun doIfValidate(writer: TextWriter, toAppend: TextWriter.() -> Unit): ValidatorChain {
         writer.append("if (${validationCondition()}) {")
         writer.withIncreasedIndentation().toAppend()
@@ -51,28 +94,117 @@ class StubValidator : ValidatorRenderer<Any>(null) {
     }
 }
 
-class SpecialValuesValidatorRenderer(validator: SpecialValuesValidator<*>) : ValidatorRenderer<SpecialValuesValidator<*>>(validator) {
+/*
+* Strings are matched by a switch over the lower-cased allowed values, lower-casing the value itself only
+* when the exact match fails. Small non-negative numbers are checked against a bitmask, other ints by a
+* switch and longs by a binary search over a sorted array.
+*/
+class SpecialValuesValidatorRenderer(validator: SpecialValuesValidator<*>,
+                                     private val name: String,
+                                     private val modifiers: String = "private static")
+    : ValidatorRenderer<SpecialValuesValidator<*>>(validator) {
+
+    private val values = validator.values
+
+    private val helperName = "is" + name.toLowerCase().toCamelCase()
+
+    private val isBitmask = values.isNotEmpty() && values.all {
+        (it is Int && it in 0..63) || (it is Long && it in 0L..63L)
+    }
 
     override fun appendPreValidate(writer: TextWriter) {
-        writer.append("Set<?> allowed = new HashSet<>(${asPredefinedCollection(validator!!.values)});")
-        writer.nextLine()
     }
 
-    override fun validationCondition(): String {
-        return if(validator!!.values[0] is String) "allowed.contains(((String)value).toLowerCase(Locale.ENGLISH))"
-        else "allowed.contains(value)"
+    override fun validationCondition(): String = when {
+        values.isEmpty() -> "false"
+        isBitmask -> "value >= 0 && value < 64 && ($name & (1L << value)) != 0L"
+        values[0] is Long -> "Arrays.binarySearch($name, value) >= 0"
+        else -> "$helperName(value)"
+    }
+
+    override fun declaration(): Renderer? = when {
+        values.isEmpty() -> null
+        isBitmask -> {
+            val mask = values.fold(0L) { mask, value -> mask or (1L shl (value as Number).toInt()) }
+            "$modifiers final long $name = 0x${java.lang.Long.toHexString(mask)}L;".asRenderer()
+        }
+        values[0] is Long -> {
+            val sorted = values.map { it as Long }.distinct().sorted()
+            "$modifiers final long[] $name = {${sorted.joinToString { "${it}L" }}};".asRenderer()
+        }
+        else -> null
+    }
+
+    private fun TextWriter.appendCases() {
+        asPredefinedValues(values).distinct().forEachIndexed { i, value ->
+            if (i != 0) {
+                nextLine()
+            }
+            append("case $value:")
+        }
+        withIncreasedIndentation().append("return true;")
+    }
+
+    override fun helper(): Renderer? = when {
+        values.isEmpty() || isBitmask || values[0] is Long -> null
+        values[0] is String -> object : Renderer {
+            override fun render(writer: TextWriter) {
+                with(writer) {
+                    append("$modifiers boolean $helperName(String value) {")
+                    with(withIncreasedIndentation()) {
+                        append("switch (value) {")
+                        with(withIncreasedIndentation()) {
+                            appendCases()
+                            append("default: {")
+                            with(withIncreasedIndentation()) {
+                                append("String lowerCase = value.toLowerCase(Locale.ENGLISH);").nextLine()
+                                append("return !lowerCase.equals(value) && $helperName(lowerCase);")
+                            }
+                            append("}")
+                        }
+                        append("}")
+                    }
+                    append("}")
+                }
+            }
+        }
+        else -> object : Renderer {
+            override fun render(writer: TextWriter) {
+                with(writer) {
+                    append("$modifiers boolean $helperName(int value) {")
+                    with(withIncreasedIndentation()) {
+                        append("switch (value) {")
+                        with(withIncreasedIndentation()) {
+                            appendCases()
+                            append("default: {")
+                            withIncreasedIndentation().append("return false;")
+                            append("}")
+                        }
+                        append("}")
+                    }
+                    append("}")
+                }
+            }
+        }
     }
 }
 
-class RegexValidatorRenderer(validator: RegexValidator) : ValidatorRenderer<RegexValidator>(validator) {
+class RegexValidatorRenderer(validator: RegexValidator,
+                             private val name: String,
+                             private val modifiers: String = "private static")
+    : ValidatorRenderer<RegexValidator>(validator) {
+
     override fun appendPreValidate(writer: TextWriter) {
-        writer.append("Matcher matcher = Pattern.compile(\"${StringEscapeUtils.escapeJava(validator!!.pattern.toString())}\").matcher(\"\");")
+        writer.append("Matcher matcher = $name.matcher(\"\");")
         writer.nextLine()
     }
 
     override fun validationCondition(): String {
         return "matcher.reset(value).matches()"
     }
+
+    override fun declaration(): Renderer? =
+            "$modifiers final Pattern $name = Pattern.compile(\"${StringEscapeUtils.escapeJava(validator!!.pattern.toString())}\");".asRenderer()
 }
 
 class RangeValidatorRenderer(validator: RangeValidator) : ValidatorRenderer<RangeValidator>(validator) {
@@ -83,3 +215,9 @@ class RangeValidatorRenderer(validator: RangeValidator) : ValidatorRenderer<Rang
         return "value >= ${validator!!.fromInclusive} && value <= ${validator.toInclusive}"
     }
 }
+
+private fun String.asRenderer(): Renderer = object : Renderer {
+    override fun render(writer: TextWriter) {
+        writer.append(this@asRenderer)
+    }
+}
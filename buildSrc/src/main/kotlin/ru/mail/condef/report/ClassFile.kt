@@ -0,0 +1,218 @@
+package ru.mail.condef.report
+
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.File
+
+/*
+* A compiled class reduced to what the code report needs: its size and the bytecode size and allocation sites
+* of every method.
+*/
+class ClassFile(val name: String, val bytes: Int, val methods: List<Method>) {
+
+    /*
+    * `allocations` counts the instructions creating an object, an array or a boxed value, each once,
+    * whether it runs in a loop or not at all.
+    */
+    class Method(val name: String, val descriptor: String, val codeBytes: Int, val allocations: Int)
+}
+
+fun readClassFile(file: File): ClassFile = try {
+    ClassFileReader(file.readBytes()).read()
+} catch (e: RuntimeException) {
+    throw IllegalStateException("Cannot read class file $file: ${e.message}", e)
+}
+
+private class ClassFileReader(private val bytes: ByteArray) {
+
+    private val input = DataInputStream(ByteArrayInputStream(bytes))
+    private lateinit var utf8: Array<String?>
+    private lateinit var references: IntArray
+
+    fun read(): ClassFile {
+        if (input.readInt() != MAGIC) {
+            throw IllegalArgumentException("not a class file")
+        }
+        input.skipBytes(4)
+        readConstantPool()
+        input.skipBytes(2)
+        val name = className(input.readUnsignedShort())
+        input.skipBytes(2)
+        input.skipBytes(2 * input.readUnsignedShort())
+        repeat(input.readUnsignedShort()) {
+            input.skipBytes(6)
+            skipAttributes()
+        }
+        val methods = List(input.readUnsignedShort()) { readMethod() }
+        return ClassFile(name.replace('/', '.'), bytes.size, methods)
+    }
+
+    /*
+    * Keeps UTF-8 entries, and the first index of every class, member reference and name and type entry,
+    * the ones boxing calls are resolved with.
+    */
+    private fun readConstantPool() {
+        val count = input.readUnsignedShort()
+        utf8 = arrayOfNulls(count)
+        references = IntArray(count * 2)
+        var index = 1
+        while (index < count) {
+            when (val tag = input.readUnsignedByte()) {
+                CONSTANT_UTF8 -> utf8[index] = input.readUTF()
+                CONSTANT_CLASS, CONSTANT_STRING, CONSTANT_METHOD_TYPE, CONSTANT_MODULE, CONSTANT_PACKAGE ->
+                    references[index * 2] = input.readUnsignedShort()
+                CONSTANT_FIELD, CONSTANT_METHOD, CONSTANT_INTERFACE_METHOD, CONSTANT_NAME_AND_TYPE -> {
+                    references[index * 2] = input.readUnsignedShort()
+                    references[index * 2 + 1] = input.readUnsignedShort()
+                }
+                CONSTANT_INTEGER, CONSTANT_FLOAT, CONSTANT_DYNAMIC, CONSTANT_INVOKE_DYNAMIC -> input.skipBytes(4)
+                CONSTANT_LONG, CONSTANT_DOUBLE -> {
+                    input.skipBytes(8)
+                    index++
+                }
+                CONSTANT_METHOD_HANDLE -> input.skipBytes(3)
+                else -> throw IllegalArgumentException("unknown constant pool tag $tag")
+            }
+            index++
+        }
+    }
+
+    private fun readMethod(): ClassFile.Method {
+        input.skipBytes(2)
+        val name = utf8(input.readUnsignedShort())
+        val descriptor = utf8(input.readUnsignedShort())
+        var codeBytes = 0
+        var allocations = 0
+        repeat(input.readUnsignedShort()) {
+            val attribute = utf8(input.readUnsignedShort())
+            val length = input.readInt()
+            if (attribute == "Code") {
+                input.skipBytes(4)
+                codeBytes = input.readInt()
+                val code = ByteArray(codeBytes)
+                input.readFully(code)
+                allocations = countAllocations(code)
+                input.skipBytes(length - 8 - codeBytes)
+            } else {
+                input.skipBytes(length)
+            }
+        }
+        return ClassFile.Method(name, descriptor, codeBytes, allocations)
+    }
+
+    private fun skipAttributes() {
+        repeat(input.readUnsignedShort()) {
+            input.skipBytes(2)
+            input.skipBytes(input.readInt())
+        }
+    }
+
+    private fun countAllocations(code: ByteArray): Int {
+        var allocations = 0
+        var pc = 0
+        while (pc < code.size) {
+            val opcode = code[pc].toInt() and 0xff
+            when (opcode) {
+                NEW, NEWARRAY, ANEWARRAY, MULTIANEWARRAY -> allocations++
+                INVOKESTATIC -> if (isBoxing(code.u2(pc + 1))) allocations++
+            }
+            pc += instructionLength(code, pc, opcode)
+        }
+        return allocations
+    }
+
+    private fun isBoxing(methodIndex: Int): Boolean {
+        val owner = className(references[methodIndex * 2])
+        val name = utf8(references[references[methodIndex * 2 + 1] * 2])
+        return name == "valueOf" && owner in BOXED_TYPES
+    }
+
+    private fun instructionLength(code: ByteArray, pc: Int, opcode: Int): Int = when (opcode) {
+        TABLESWITCH -> {
+            val operands = (pc + 4) and 3.inv()
+            val low = code.s4(operands + 4)
+            val high = code.s4(operands + 8)
+            operands - pc + 12 + (high - low + 1) * 4
+        }
+        LOOKUPSWITCH -> {
+            val operands = (pc + 4) and 3.inv()
+            operands - pc + 8 + code.s4(operands + 4) * 8
+        }
+        WIDE -> if ((code[pc + 1].toInt() and 0xff) == IINC) 6 else 4
+        else -> INSTRUCTION_LENGTHS[opcode].toInt().also {
+            if (it == 0) {
+                throw IllegalArgumentException("unknown opcode $opcode")
+            }
+        }
+    }
+
+    private fun className(index: Int): String = utf8(references[index * 2])
+
+    private fun utf8(index: Int): String = utf8[index] ?: throw IllegalArgumentException("no UTF-8 constant at $index")
+
+    private fun ByteArray.u2(offset: Int): Int = ((this[offset].toInt() and 0xff) shl 8) or (this[offset + 1].toInt() and 0xff)
+
+    private fun ByteArray.s4(offset: Int): Int = (u2(offset) shl 16) or u2(offset + 2)
+
+    companion object {
+        private const val MAGIC = 0xCAFEBABE.toInt()
+
+        private const val CONSTANT_UTF8 = 1
+        private const val CONSTANT_INTEGER = 3
+        private const val CONSTANT_FLOAT = 4
+        private const val CONSTANT_LONG = 5
+        private const val CONSTANT_DOUBLE = 6
+        private const val CONSTANT_CLASS = 7
+        private const val CONSTANT_STRING = 8
+        private const val CONSTANT_FIELD = 9
+        private const val CONSTANT_METHOD = 10
+        private const val CONSTANT_INTERFACE_METHOD = 11
+        private const val CONSTANT_NAME_AND_TYPE = 12
+        private const val CONSTANT_METHOD_HANDLE = 15
+        private const val CONSTANT_METHOD_TYPE = 16
+        private const val CONSTANT_DYNAMIC = 17
+        private const val CONSTANT_INVOKE_DYNAMIC = 18
+        private const val CONSTANT_MODULE = 19
+        private const val CONSTANT_PACKAGE = 20
+
+        private const val IINC = 0x84
+        private const val TABLESWITCH = 0xaa
+        private const val LOOKUPSWITCH = 0xab
+        private const val INVOKESTATIC = 0xb8
+        private const val NEW = 0xbb
+        private const val NEWARRAY = 0xbc
+        private const val ANEWARRAY = 0xbd
+        private const val WIDE = 0xc4
+        private const val MULTIANEWARRAY = 0xc5
+
+        private val BOXED_TYPES = setOf("java/lang/Integer", "java/lang/Long", "java/lang/Short", "java/lang/Character",
+                "java/lang/Float", "java/lang/Double")
+
+        /*
+        * Length of every fixed length instruction by opcode, 0 for the variable length and unknown ones.
+        */
+        private val INSTRUCTION_LENGTHS = ByteArray(256).apply {
+            fill(1, 0x00, 0xca)
+            this[0x10] = 2
+            fill(3, 0x11, 0x15)
+            this[0x12] = 2
+            fill(2, 0x15, 0x1a)
+            fill(2, 0x36, 0x3b)
+            this[IINC] = 3
+            fill(3, 0x99, 0xa9)
+            this[0xa9] = 2
+            this[TABLESWITCH] = 0
+            this[LOOKUPSWITCH] = 0
+            fill(3, 0xb2, 0xb9)
+            fill(5, 0xb9, 0xbb)
+            this[NEW] = 3
+            this[NEWARRAY] = 2
+            this[ANEWARRAY] = 3
+            fill(3, 0xc0, 0xc2)
+            this[WIDE] = 0
+            this[MULTIANEWARRAY] = 4
+            fill(3, 0xc6, 0xc8)
+            fill(5, 0xc8, 0xca)
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.mail.condef.report
+
+import ru.mail.condef.dsl.*
+import ru.mail.condef.renderer.FieldStorage
+import ru.mail.condef.renderer.ObjectNode
+import ru.mail.condef.renderer.SchemaModel
+import java.io.File
+
+/*
+* Compiled classes of one generated file. `parser` marks the files a parse runs through.
+*/
+class ArtifactReport(val file: String, val parser: Boolean, val classes: List<ClassFile>) {
+
+    val bytes: Int get() = classes.sumBy { it.bytes }
+
+    val methodCount: Int get() = classes.sumBy { it.methods.size }
+
+    val allocations: Int get() = classes.sumBy { klass -> klass.methods.sumBy { it.allocations } }
+}
+
+/*
+* Size of the generated code and the allocations it makes, taken from the compiled classes. Allocations per parse
+* are the allocation sites of the parser classes, every site counted once. Objects per instance estimate one
+* configuration with every field set and empty collections.
+*/
+class CodeReport(
+        val packageName: String,
+        val artifacts: List<ArtifactReport>,
+        val objectsPerInstance: Int) {
+
+    val bytes: Int get() = artifacts.sumBy { it.bytes }
+
+    val methodCount: Int get() = artifacts.sumBy { it.methodCount }
+
+    val allocationsPerParse: Int get() = artifacts.filter { it.parser }.sumBy { it.allocations }
+
+    fun violations(budget: CodeBudget): List<String> {
+        val violations = mutableListOf<String>()
+        for (artifact in artifacts) {
+            for (klass in artifact.classes) {
+                klass.methods.filter { it.codeBytes > budget.maxMethodBytes }.forEach {
+                    violations.add("${klass.name}.${it.name}${it.descriptor} has ${it.codeBytes} bytes of bytecode, " +
+                            "the budget is ${budget.maxMethodBytes}")
+                }
+            }
+        }
+        budget.maxBytes?.takeIf { bytes > it }?.let {
+            violations.add("Generated classes take $bytes bytes, the budget is $it")
+        }
+        budget.maxMethods?.takeIf { methodCount > it }?.let {
+            violations.add("Generated classes declare $methodCount methods, the budget is $it")
+        }
+        budget.maxAllocationsPerParse?.takeIf { allocationsPerParse > it }?.let {
+            violations.add("Parser has $allocationsPerParse allocation sites, the budget is $it")
+        }
+        budget.maxObjectsPerInstance?.takeIf { objectsPerInstance > it }?.let {
+            violations.add("Configuration instance holds an estimated $objectsPerInstance objects, the budget is $it")
+        }
+        return violations
+    }
+
+    fun writeJson(file: File) {
+        val json = StringBuilder()
+        json.append("{\n")
+        json.append("  \"package\": ").append(quote(packageName)).append(",\n")
+        json.append("  \"bytes\": ").append(bytes).append(",\n")
+        json.append("  \"methodCount\": ").append(methodCount).append(",\n")
+        json.append("  \"allocationsPerParse\": ").append(allocationsPerParse).append(",\n")
+        json.append("  \"objectsPerInstance\": ").append(objectsPerInstance).append(",\n")
+        json.append("  \"artifacts\": [")
+        artifacts.forEachIndexed { index, artifact ->
+            json.append(if (index == 0) "\n" else ",\n")
+            json.append("    {\n")
+            json.append("      \"file\": ").append(quote(artifact.file)).append(",\n")
+            json.append("      \"parser\": ").append(artifact.parser).append(",\n")
+            json.append("      \"bytes\": ").append(artifact.bytes).append(",\n")
+            json.append("      \"methodCount\": ").append(artifact.methodCount).append(",\n")
+            json.append("      \"allocations\": ").append(artifact.allocations).append(",\n")
+            json.append("      \"classes\": [")
+            artifact.classes.forEachIndexed { classIndex, klass ->
+                json.append(if (classIndex == 0) "\n" else ",\n")
+                json.append("        {\n")
+                json.append("          \"name\": ").append(quote(klass.name)).append(",\n")
+                json.append("          \"bytes\": ").append(klass.bytes).append(",\n")
+                json.append("          \"methodCount\": ").append(klass.methods.size).append(",\n")
+                json.append("          \"methods\": [")
+                klass.methods.forEachIndexed { methodIndex, method ->
+                    json.append(if (methodIndex == 0) "\n" else ",\n")
+                    json.append("            { \"name\": ").append(quote(method.name))
+                            .append(", \"descriptor\": ").append(quote(method.descriptor))
+                            .append(", \"bytes\": ").append(method.codeBytes)
+                            .append(", \"allocations\": ").append(method.allocations)
+                            .append(" }")
+                }
+                json.append("\n          ]\n")
+                json.append("        }")
+            }
+            json.append("\n      ]\n")
+            json.append("    }")
+        }
+        json.append("\n  ]\n")
+        json.append("}\n")
+        file.absoluteFile.parentFile.mkdirs()
+        file.writeText(json.toString(), Charsets.UTF_8)
+    }
+
+    private fun quote(value: String) = "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+}
+
+/*
+* Limits the generated code is checked against, null leaves a value unchecked. The method limit defaults to
+* HotSpot's HugeMethodLimit, larger methods are never compiled by the JIT.
+*/
+class CodeBudget(
+        val maxMethodBytes: Int = HUGE_METHOD_LIMIT,
+        val maxBytes: Int? = null,
+        val maxMethods: Int? = null,
+        val maxAllocationsPerParse: Int? = null,
+        val maxObjectsPerInstance: Int? = null) {
+
+    companion object {
+        const val HUGE_METHOD_LIMIT = 8000
+    }
+}
+
+/*
+* Objects held by one configuration: every object of the tree, the largest variant of multi objects, a string
+* and its characters per string field, the wrapper of every boxed number, and one per collection, left empty.
+*/
+fun estimateObjectCount(model: SchemaModel, storage: FieldStorage): Int = estimateObjectCount(model.root, storage)
+
+private fun estimateObjectCount(node: ObjectNode, storage: FieldStorage): Int = 1 + node.fields.sumBy {
+    when (it.type) {
+        is StringType -> 2
+        is IntegerType, is LongType -> if (storage == FieldStorage.BOXED) 1 else 0
+        is BoolType -> 0
+        is StrictObjectType -> estimateObjectCount(it.objectNode!!, storage)
+        is MultiObjectType -> it.variants.values.fold(0) { max, variant -> maxOf(max, estimateObjectCount(variant, storage)) }
+        is ArrayType<*>, is FreeObjectType -> 1
+    }
+}
@@ -0,0 +1,206 @@
+package ru.mail.condef.schema
+
+import ru.mail.condef.dsl.*
+import ru.mail.condef.etalon.JsonValueParser
+import java.io.File
+import java.util.regex.Pattern
+import java.util.regex.PatternSyntaxException
+
+/*
+* Reads a definition from a JSON schema file, the declarative form of the Kotlin DSL. The schema is an input of
+* the generation task, not code of the build, so editing it does not recompile buildSrc. Fields keep the order
+* of the file:
+*
+*   {
+*     "feature": {
+*       "type": "object",
+*       "description": "Some feature",
+*       "default": {},
+*       "fields": {
+*         "field1": { "type": "int", "allowedValues": [1, 3, 5, 7], "default": 1 },
+*         "field2": { "type": "string", "required": true, "pattern": "\\d\\d" }
+*       }
+*     }
+*   }
+*
+* Types are string, int, long, bool, object (with "fields"), map (with optional "values" type), array
+* (with "elements" type) and multi (with "types", a definition per value of the "type" key). A field has at most
+* one of "default" and "required" and at most one of the "allowedValues", "allowedRange" and "pattern"
+* validators. `{}` is the empty object default, "className" sets the custom name of the field.
+*/
+fun readDefinition(file: File): Definition {
+    val json = try {
+        JsonValueParser(file.readText(Charsets.UTF_8)).parse()
+    } catch (e: IllegalArgumentException) {
+        throw IllegalStateException("Definition ${file.name} is not a valid JSON: ${e.message}", e)
+    }
+    return DefinitionReader(file.name).readDefinition(json, "")
+}
+
+private class DefinitionReader(private val source: String) {
+
+    fun readDefinition(json: Any?, path: String): Definition {
+        val fields = json as? Map<*, *> ?: fail(path, "object expected")
+        if (fields.isEmpty()) {
+            fail(path, "definition has no fields")
+        }
+        return Definition(fields.map { readField(it.key as String, it.value, path.child(it.key as String)) })
+    }
+
+    private fun readField(name: String, json: Any?, path: String): Field<*> {
+        val spec = readSpec(json, path, FIELD_KEYS)
+        val type = readType(spec, path)
+        val absenceHandler = when {
+            spec["required"] == true && spec.containsKey("default") -> fail(path, "required field can not have a default")
+            spec.containsKey("required") && spec["required"] !is Boolean -> fail(path.child("required"), "boolean expected")
+            spec["required"] == true -> RequiredHandler()
+            spec.containsKey("default") -> SubstituteWithDefaultHandler(readValue(spec["default"], type, path.child("default")))
+            else -> null
+        }
+        return Field(
+                Field.Name(name, readString(spec, "className", path) ?: ""),
+                type,
+                absenceHandler,
+                readValidator(spec, type, path),
+                readString(spec, "description", path) ?: ""
+        )
+    }
+
+    private fun readType(spec: Map<*, *>, path: String): Type<*> {
+        val type = readString(spec, "type", path) ?: fail(path.child("type"), "type is not defined")
+        val allowed = TYPE_KEYS.getOrElse(type) {
+            fail(path.child("type"), "unknown type `$type`, expected one of ${TYPE_KEYS.keys}")
+        }
+        spec.keys.firstOrNull { it in NESTED_KEYS && it !in allowed }?.let {
+            fail(path.child(it as String), "not allowed for type `$type`")
+        }
+        return when (type) {
+            "string" -> StringType()
+            "int" -> IntegerType()
+            "long" -> LongType()
+            "bool" -> BoolType()
+            "object" -> StrictObjectType(readDefinition(spec["fields"], path.child("fields")))
+            "map" -> FreeObjectType(spec["values"]?.let { readType(readSpec(it, path.child("values"), emptySet()), path.child("values")) })
+            "array" -> ArrayType(readType(
+                    readSpec(spec["elements"] ?: fail(path.child("elements"), "elements type is not defined"), path.child("elements"), emptySet()),
+                    path.child("elements")
+            ))
+            else -> readMultiObjectType(spec["types"], path.child("types"))
+        }
+    }
+
+    private fun readMultiObjectType(json: Any?, path: String): MultiObjectType {
+        val types = json as? Map<*, *> ?: fail(path, "object expected")
+        if (types.isEmpty()) {
+            fail(path, "no types defined")
+        }
+        return MultiObjectType(types.entries.associateTo(LinkedHashMap()) {
+            it.key as String to readDefinition(it.value, path.child(it.key as String))
+        })
+    }
+
+    private fun readValidator(spec: Map<*, *>, type: Type<*>, path: String): Validator? {
+        val keys = VALIDATOR_KEYS.filter { spec.containsKey(it) }
+        if (keys.size > 1) {
+            fail(path, "only one of $keys is allowed")
+        }
+        val key = keys.firstOrNull() ?: return null
+        val valueType = if (type is ArrayType<*>) type.subtype else type
+        return when (key) {
+            "allowedValues" -> {
+                if (valueType !is StringType && valueType !is IntegerType && valueType !is LongType) {
+                    fail(path.child(key), "allowed values need a string, int or long type")
+                }
+                val values = spec[key] as? List<*> ?: fail(path.child(key), "array expected")
+                SpecialValuesValidator(values.mapIndexed { index, value -> readValue(value, valueType, "${path.child(key)}[$index]") })
+            }
+            "allowedRange" -> {
+                if (type !is IntegerType) {
+                    fail(path.child(key), "allowed range needs the int type")
+                }
+                val range = spec[key] as? List<*> ?: fail(path.child(key), "array expected")
+                if (range.size != 2) {
+                    fail(path.child(key), "range of two bounds expected")
+                }
+                val from = readValue(range[0], type, "${path.child(key)}[0]") as Int
+                val to = readValue(range[1], type, "${path.child(key)}[1]") as Int
+                if (from > to) {
+                    fail(path.child(key), "empty range $from..$to")
+                }
+                RangeValidator(from, to)
+            }
+            else -> {
+                if (valueType !is StringType) {
+                    fail(path.child(key), "pattern needs the string type")
+                }
+                val pattern = readString(spec, key, path)!!
+                try {
+                    RegexValidator(Pattern.compile(pattern))
+                } catch (e: PatternSyntaxException) {
+                    fail(path.child(key), "invalid pattern: ${e.description}")
+                }
+            }
+        }
+    }
+
+    /*
+    * Default or allowed value converted to the type the DSL declares it with.
+    */
+    private fun readValue(json: Any?, type: Type<*>, path: String): Any? = when {
+        json == null -> null
+        type is StringType -> json as? String ?: fail(path, "string expected")
+        type is IntegerType -> {
+            val value = json as? Long ?: fail(path, "integer expected")
+            if (value < Int.MIN_VALUE || value > Int.MAX_VALUE) {
+                fail(path, "$value does not fit into int")
+            }
+            value.toInt()
+        }
+        type is LongType -> json as? Long ?: fail(path, "integer expected")
+        type is BoolType -> json as? Boolean ?: fail(path, "boolean expected")
+        type is ArrayType<*> -> (json as? List<*> ?: fail(path, "array expected")).mapIndexed { index, element ->
+            readValue(element, type.subtype, "$path[$index]")
+        }
+        json is Map<*, *> && json.isEmpty() -> EmptyObject
+        else -> fail(path, "only {} or null is allowed")
+    }
+
+    private fun readSpec(json: Any?, path: String, fieldKeys: Set<String>): Map<*, *> {
+        val spec = json as? Map<*, *> ?: fail(path, "object expected")
+        spec.keys.firstOrNull { it !in fieldKeys && it !in NESTED_KEYS && it != "type" }?.let {
+            fail(path.child(it as String), "unknown key")
+        }
+        return spec
+    }
+
+    private fun readString(spec: Map<*, *>, key: String, path: String): String? {
+        if (!spec.containsKey(key)) {
+            return null
+        }
+        return spec[key] as? String ?: fail(path.child(key), "string expected")
+    }
+
+    private fun String.child(key: String) = if (isEmpty()) key else "$this.$key"
+
+    private fun fail(path: String, message: String): Nothing =
+            throw IllegalStateException("Definition $source is not valid at `$path`: $message")
+
+    companion object {
+        private val VALIDATOR_KEYS = listOf("allowedValues", "allowedRange", "pattern")
+
+        private val FIELD_KEYS = setOf("description", "className", "default", "required") + VALIDATOR_KEYS
+
+        private val NESTED_KEYS = setOf("fields", "values", "elements", "types")
+
+        private val TYPE_KEYS = mapOf(
+                "string" to emptySet(),
+                "int" to emptySet(),
+                "long" to emptySet(),
+                "bool" to emptySet(),
+                "object" to setOf("fields"),
+                "map" to setOf("values"),
+                "array" to setOf("elements"),
+                "multi" to setOf("types")
+        )
+    }
+}
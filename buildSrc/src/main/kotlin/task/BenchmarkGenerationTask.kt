@@ -0,0 +1,44 @@
+package task
+
+import benchmark.BenchmarkGenerator
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+import java.io.File
+
+open class BenchmarkGenerationTask : DefaultTask() {
+
+    /*
+    * Dest dir for generated configuration classes and benchmarks.
+    */
+    @OutputDirectory
+    lateinit var destDir: File
+
+    /*
+    * Dest dir for JSON payloads, they are loaded as classpath resources.
+    */
+    @OutputDirectory
+    lateinit var resourcesDir: File
+
+    /*
+    * Number of elements in every generated array and map.
+    */
+    @Input
+    var collectionSize: Int = 64
+
+    /*
+    * Definition file of the app, benchmarked as the "small" definition.
+    */
+    @InputFile
+    @PathSensitive(PathSensitivity.NONE)
+    lateinit var configurationDefinition: File
+
+    @TaskAction
+    fun executeTask() {
+        BenchmarkGenerator(destDir, resourcesDir, temporaryDir, collectionSize, configurationDefinition).generate()
+    }
+}
@@ -1,92 +1,186 @@
 package task
 
 import org.gradle.api.DefaultTask
-import org.gradle.api.tasks.InputFile
-import org.gradle.api.tasks.OutputDirectory
-import org.gradle.api.tasks.OutputFile
-import org.gradle.api.tasks.TaskAction
-import ru.mail.condef.main.ConfigGenerator
+import org.gradle.api.tasks.*
+import ru.mail.condef.renderer.ClassLayout
+import ru.mail.condef.renderer.FieldStorage
+import ru.mail.condef.renderer.MethodBudget
+import ru.mail.condef.renderer.ParserMode
 import java.io.File
 
+/*
+* Every setting that changes the generated code is an input, so the task is up to date in a no-op build and its
+* outputs can be taken from the build cache. The action does not touch the project, one instance serves
+* all build variants.
+*/
+@CacheableTask
 open class ConfigGenerationTask : DefaultTask() {
 
     /*
     * Package name for the generated classes.
     */
+    @get:Input
     lateinit var packageName: String
 
     /*
     * Dest dir for classes
     */
+    @get:Internal
     lateinit var destDir: String
 
     /*
     * JSON parser class name.
     */
+    @get:Input
     lateinit var jsonParserClassName: String
 
     /*
     * Configuration class name.
     */
+    @get:Input
     lateinit var configurationClassName: String
 
     /*
     * Configuration class name.
     */
+    @get:Input
     lateinit var configurationInterfaceName: String
 
     /*
     * Configuration settings definition class name.
     */
+    @get:Input
     lateinit var settingsDefinitionClassName: String
 
     /*
     * Configuration settings mapper class name.
     */
+    @get:Input
     lateinit var settingsMapperClassName: String
 
     /*
-    * Configuration definition file.
+    * JSON schema of the configuration, see readDefinition. It is read when the task runs, so editing it reruns
+    * only the generation and the compilation of its output.
     */
-    @InputFile
+    @get:InputFile
+    @get:PathSensitive(PathSensitivity.NONE)
     lateinit var configurationDefinition: File
 
     /*
     * Documentation file.
     */
-    @OutputFile
+    @get:OutputFile
     lateinit var documentationFile: File
 
     /*
     * Build version.
     */
+    @get:Input
     lateinit var buildVersion: String
 
+    /*
+    * Parser flavour: TREE parses org.json objects, STREAMING reads a JsonReader token stream, TABLE reads it with one
+    * loop driven by field tables, for smaller code on wide objects. TABLE needs the NESTED class layout.
+    */
+    @get:Input
+    var parserMode: ParserMode = ParserMode.TREE
+
+    /*
+    * Package of the JsonReader used by the streaming parser.
+    */
+    @get:Input
+    var jsonReaderPackage: String = "android.util"
+
+    /*
+    * Field storage of the implementation: BOXED uses wrapper types, PACKED unboxed scalars and packed "Set" flags.
+    */
+    @get:Input
+    var fieldStorage: FieldStorage = FieldStorage.BOXED
+
+    /*
+    * Also generate immutable <Interface>Snapshot classes and the <Interface>Store publishing them.
+    */
+    @get:Input
+    var generateSnapshots: Boolean = false
+
+    /*
+    * Also generate <Interface>BinaryCodec reading and writing the configuration in a compact binary form.
+    */
+    @get:Input
+    var generateBinaryCodec: Boolean = false
+
+    /*
+    * Bundled etalon configuration. When set, it is validated against the definition at build time
+    * and compiled into <Interface>Etalon, any mismatch fails the build.
+    */
+    @get:Optional
+    @get:InputFile
+    @get:PathSensitive(PathSensitivity.NONE)
+    var etalonConfiguration: File? = null
+
+    /*
+    * Defer conversion of nested objects without required fields until their getters are called.
+    * Needs the TREE parser mode.
+    */
+    @get:Input
+    var lazySubtrees: Boolean = false
+
+    /*
+    * NESTED declares nested objects inside the root classes, SPLIT writes every object and its parser
+    * to files of their own.
+    */
+    @get:Input
+    var classLayout: ClassLayout = ClassLayout.NESTED
+
+    /*
+    * Estimated bytecode size generated methods are split at, see MethodBudget.
+    */
+    @get:Input
+    var maxMethodBytes: Int = MethodBudget.DEFAULT_MAX_BYTES
+
+
+    /*
+    * Directory of the generated package. It belongs to the task, files left there by previous runs
+    * with other settings are removed.
+    */
+    @get:OutputDirectory
+    val outputDir: File
+        get() = File(destDir + "/" + packageName.replace('.', '/'))
+
+    /*
+    * Settings of this task for the tasks reporting on its output, copied when they are configured.
+    */
+    fun generatorSettings() = ConfigGeneratorSettings(
+        packageName,
+        configurationInterfaceName,
+        configurationClassName,
+        jsonParserClassName,
+        settingsDefinitionClassName,
+        settingsMapperClassName,
+        configurationDefinition,
+        parserMode,
+        jsonReaderPackage,
+        fieldStorage,
+        generateSnapshots,
+        generateBinaryCodec,
+        etalonConfiguration,
+        lazySubtrees,
+        classLayout,
+        maxMethodBytes)
 
     @TaskAction
     fun executeTask() {
         println("========== Generating config =========")
-        println(configurationDefinition.length())
-        println("Destination: ${getOutputDirName()}, " +
+        println("Destination: $outputDir, " +
                 "Parser: $jsonParserClassName, " +
                 "Interface: $configurationInterfaceName, " +
                 "Impl: $configurationClassName")
-        ConfigGenerator(
-            packageName,
-            configurationInterfaceName,
-            configurationClassName,
-            jsonParserClassName,
-            settingsDefinitionClassName,
-            settingsMapperClassName,
-            getOutputDirName().absolutePath,
-            documentationFile,
-            buildVersion)
+        val generated = generatorSettings().generator(outputDir, documentationFile, buildVersion)
             .generate()
-    }
-
-
-    @OutputDirectory
-    private fun getOutputDirName(): File {
-        return File(destDir + "/" + packageName.replace('.', '/'))
+            .map { it.absoluteFile }
+            .toSet()
+        outputDir.listFiles()
+            ?.filter { it.isFile && it.absoluteFile !in generated }
+            ?.forEach { it.delete() }
     }
 }
@@ -0,0 +1,58 @@
+package task
+
+import org.gradle.api.tasks.*
+import ru.mail.condef.main.ConfigGenerator
+import ru.mail.condef.renderer.ClassLayout
+import ru.mail.condef.renderer.FieldStorage
+import ru.mail.condef.renderer.ParserMode
+import ru.mail.condef.schema.readDefinition
+import java.io.File
+import java.io.Serializable
+
+/*
+* Settings that decide which classes are generated and what they contain, a nested input of the tasks that
+* generate the code or report on it. The values are copied when the task is configured, the definition is
+* read when the task runs.
+*/
+class ConfigGeneratorSettings(
+        @get:Input val packageName: String,
+        @get:Input val configurationInterfaceName: String,
+        @get:Input val configurationClassName: String,
+        @get:Input val jsonParserClassName: String,
+        @get:Input val settingsDefinitionClassName: String,
+        @get:Input val settingsMapperClassName: String,
+        @get:InputFile @get:PathSensitive(PathSensitivity.NONE) val configurationDefinition: File,
+        @get:Input val parserMode: ParserMode,
+        @get:Input val jsonReaderPackage: String,
+        @get:Input val fieldStorage: FieldStorage,
+        @get:Input val generateSnapshots: Boolean,
+        @get:Input val generateBinaryCodec: Boolean,
+        @get:Optional @get:InputFile @get:PathSensitive(PathSensitivity.NONE) val etalonConfiguration: File?,
+        @get:Input val lazySubtrees: Boolean,
+        @get:Input val classLayout: ClassLayout,
+        @get:Input val maxMethodBytes: Int) : Serializable {
+
+    /*
+    * Generator writing to `destDir`. The build version only appears in the documentation.
+    */
+    fun generator(destDir: File, documentationFile: File, buildVersion: String = "") = ConfigGenerator(
+            packageName,
+            configurationInterfaceName,
+            configurationClassName,
+            jsonParserClassName,
+            settingsDefinitionClassName,
+            settingsMapperClassName,
+            destDir.absolutePath,
+            documentationFile,
+            buildVersion,
+            parserMode,
+            jsonReaderPackage,
+            fieldStorage,
+            generateSnapshots,
+            generateBinaryCodec,
+            etalonConfiguration,
+            lazySubtrees,
+            definition = readDefinition(configurationDefinition),
+            classLayout = classLayout,
+            maxMethodBytes = maxMethodBytes)
+}
@@ -0,0 +1,94 @@
+package task
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.FileTree
+import org.gradle.api.tasks.*
+import org.gradle.api.tasks.util.PatternSet
+import ru.mail.condef.report.CodeBudget
+import java.io.File
+
+/*
+* Writes a JSON report of the compiled output of a ConfigGenerationTask, bytecode size, method count and
+* allocation sites of every generated class and method and the estimated object count of a configuration,
+* and fails the build when it exceeds the budget. The report is written before the check, so it shows what
+* exceeded it. The task holds copies of the generator settings rather than the generation task, its action
+* only reads its own inputs.
+*/
+@CacheableTask
+open class GeneratedCodeReportTask : DefaultTask() {
+
+    /*
+    * Settings the reported code was generated with, see ConfigGenerationTask.generatorSettings.
+    */
+    @get:Nested
+    lateinit var generatorSettings: ConfigGeneratorSettings
+
+    /*
+    * Directory the generated sources are compiled to, only the classes of the generated package are inputs.
+    */
+    @get:Internal
+    val classesDir: DirectoryProperty = project.objects.directoryProperty()
+
+    /*
+    * Report file.
+    */
+    @get:OutputFile
+    lateinit var reportFile: File
+
+    /*
+    * Bytecode size no generated method may exceed, HotSpot's HugeMethodLimit by default.
+    */
+    @get:Input
+    var maxMethodBytes: Int = CodeBudget.HUGE_METHOD_LIMIT
+
+    /*
+    * Size of all generated class files.
+    */
+    @get:Optional
+    @get:Input
+    var maxBytes: Int? = null
+
+    /*
+    * Number of methods of all generated classes.
+    */
+    @get:Optional
+    @get:Input
+    var maxMethods: Int? = null
+
+    /*
+    * Allocation sites of the parser classes.
+    */
+    @get:Optional
+    @get:Input
+    var maxAllocationsPerParse: Int? = null
+
+    /*
+    * Estimated number of objects held by a configuration instance.
+    */
+    @get:Optional
+    @get:Input
+    var maxObjectsPerInstance: Int? = null
+
+    /*
+    * Compiled classes of the generated package.
+    */
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    val generatedClasses: FileTree
+        get() = classesDir.asFileTree
+            .matching(PatternSet().include(generatorSettings.packageName.replace('.', '/') + "/*.class"))
+
+    @TaskAction
+    fun executeTask() {
+        val report = generatorSettings.generator(temporaryDir, File(temporaryDir, "configuration.html"))
+            .report(classesDir.get().asFile)
+        report.writeJson(reportFile)
+        val violations = report.violations(CodeBudget(maxMethodBytes, maxBytes, maxMethods, maxAllocationsPerParse,
+                maxObjectsPerInstance))
+        if (violations.isNotEmpty()) {
+            throw IllegalStateException("Generated code exceeds the budget, see $reportFile:\n" +
+                    violations.joinToString("\n") { "  $it" })
+        }
+    }
+}
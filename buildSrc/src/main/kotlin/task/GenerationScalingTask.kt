@@ -0,0 +1,34 @@
+package task
+
+import benchmark.GenerationScaling
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.TaskAction
+import java.io.File
+
+open class GenerationScalingTask : DefaultTask() {
+
+    /*
+    * Report with the generation time and allocations per definition size.
+    */
+    lateinit var reportFile: File
+
+    /*
+    * Field counts of the wide synthetic definitions.
+    */
+    var fieldCounts: List<Int> = listOf(1000, 2500, 5000, 10000, 20000)
+
+    /*
+    * Nesting depths of the deep synthetic definitions.
+    */
+    var depths: List<Int> = listOf(25, 50, 100, 200)
+
+    init {
+        // a measurement, never up to date
+        outputs.upToDateWhen { false }
+    }
+
+    @TaskAction
+    fun executeTask() {
+        println(GenerationScaling(temporaryDir, reportFile, fieldCounts, depths).measure())
+    }
+}
@@ -0,0 +1,105 @@
+package ru.mail.flexsettings;
+
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import ru.mail.flexsettings.field.Field;
+import ru.mail.flexsettings.field.ObjectField;
+import ru.mail.flexsettings.field.PrimitiveField;
+import ru.mail.flexsettings.field.StrictObjectField;
+
+// Streams the changed settings as JSON: changed fields, the objects leading to them and the required fields
+// of those objects, which the parser rejects them without. Unchanged settings are left to the configuration
+// the developer settings are merged with. The values are copied when the writer is created, so the fields may
+// be edited while they are written on another thread.
+public class ChangedSettingsWriter {
+    private final List<Member> mMembers;
+
+    // reads the field tree, call it on the thread the fields are edited on
+    public ChangedSettingsWriter(StrictObjectField baseField) {
+        Set<Field> changed = Collections.newSetFromMap(new IdentityHashMap<Field, Boolean>());
+        collectChanged(baseField, changed);
+        mMembers = copyObject(baseField, changed);
+    }
+
+    public void writeTo(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writeObject(writer, mMembers);
+        writer.flush();
+    }
+
+    private static boolean collectChanged(Field field, Set<Field> changed) {
+        boolean isChanged = field.isChanged();
+        if (field.isObject()) {
+            for (Field subField : field.asObject().getAllFields()) {
+                isChanged |= collectChanged(subField, changed);
+            }
+        }
+        if (isChanged) {
+            changed.add(field);
+        }
+        return isChanged;
+    }
+
+    private static List<Member> copyObject(ObjectField object, Set<Field> changed) {
+        List<Member> members = new ArrayList<Member>();
+        for (Field field : object.getAllFields()) {
+            if (!changed.contains(field) && !field.isRequired()) {
+                continue;
+            }
+            if (field.isObject()) {
+                members.add(new Member(field.getName(), null, copyObject(field.asObject(), changed)));
+            } else if (field.isPrimitive()) {
+                Object value = valueToWrite(field.asPrimitive());
+                if (value != null) {
+                    members.add(new Member(field.getName(), value, null));
+                }
+            }
+        }
+        return members;
+    }
+
+    // the parser takes a null as a value of the wrong type: an absent field falls back to the configuration
+    // the settings are merged with, a required one has to be present and gets the default of its type
+    private static <T> T valueToWrite(PrimitiveField<T> field) {
+        T value = field.getValue();
+        return value != null || !field.isRequired() ? value : field.getDefaultValue();
+    }
+
+    private static void writeObject(JsonWriter writer, List<Member> members) throws IOException {
+        writer.beginObject();
+        for (Member member : members) {
+            writer.name(member.mName);
+            if (member.mMembers != null) {
+                writeObject(writer, member.mMembers);
+            } else if (member.mValue instanceof String) {
+                writer.value((String) member.mValue);
+            } else if (member.mValue instanceof Boolean) {
+                writer.value((Boolean) member.mValue);
+            } else {
+                writer.value((Number) member.mValue);
+            }
+        }
+        writer.endObject();
+    }
+
+    // a written field: a String, Boolean or Number value, or the members of an object
+    private static class Member {
+        private final String mName;
+        private final Object mValue;
+        private final List<Member> mMembers;
+
+        private Member(String name, Object value, List<Member> members) {
+            mName = name;
+            mValue = value;
+            mMembers = members;
+        }
+    }
+}
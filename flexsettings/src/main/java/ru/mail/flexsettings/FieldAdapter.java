@@ -1,69 +1,75 @@
 package ru.mail.flexsettings;
 
-import android.graphics.Color;
 import android.view.LayoutInflater;
-import android.view.View;
 import android.view.ViewGroup;
-import android.widget.BaseAdapter;
-import android.widget.TextView;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
 import ru.mail.flexsettings.field.Field;
 import ru.mail.flexsettings.field.ObjectField;
 
-public class FieldAdapter extends BaseAdapter {
+public class FieldAdapter extends RecyclerView.Adapter<FieldViewHolder> implements FieldViewFactory.FieldChangedListener {
     private final ObjectField mField;
     private final FieldChangeListener mChangeListener;
     private final FieldViewFactory mFieldViewFactory;
+    // keyed on the field itself, fields of different objects may share a name
+    private final Map<Field, Long> mIds = new IdentityHashMap<Field, Long>();
 
     public FieldAdapter(FlexSettingsActivity context, ObjectField field, FieldChangeListener changeListener) {
         mField = field;
         mChangeListener = changeListener;
-        mFieldViewFactory = new FieldViewFactory(LayoutInflater.from(context), new Navigator(context));
+        mFieldViewFactory = new FieldViewFactory(LayoutInflater.from(context), new Navigator(context), this);
+        setHasStableIds(true);
     }
 
     @Override
-    public int getCount() {
+    public int getItemCount() {
         return mField.getAllFields().size();
     }
 
     @Override
-    public Object getItem(int position) {
-        return mField.getAllFields().get(position);
+    public long getItemId(int position) {
+        Field field = mField.getAllFields().get(position);
+        Long id = mIds.get(field);
+        if (id == null) {
+            id = (long) mIds.size();
+            mIds.put(field, id);
+        }
+        return id;
     }
 
     @Override
-    public long getItemId(int position) {
-        return position;
+    public int getItemViewType(int position) {
+        return mFieldViewFactory.getViewType(mField.getAllFields().get(position));
     }
 
+    @NonNull
     @Override
-    public View getView(final int position, View view, ViewGroup parent) {
-        final Field field = mField.getAllFields().get(position);
-        FieldViewHolder viewHolder = mFieldViewFactory.createView(field, parent, new FieldChangeListener() {
-            @Override
-            public void onChanged() {
-                onFieldChanged(field);
-            }
-        });
-        view = viewHolder.getView();
-        view.<TextView>findViewById(R.id.key).setText(field.getName());
-//        view.setBackgroundColor(field.isChanged() ? Color.YELLOW : viewHolder.getColor());
-        view.setBackgroundColor(viewHolder.getColor());
-        view.setOnClickListener(viewHolder.getListener());
-        return view;
+    public FieldViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return mFieldViewFactory.createViewHolder(parent, viewType);
     }
 
-    private void onFieldChanged(Field field) {
+    @Override
+    public void onBindViewHolder(@NonNull FieldViewHolder holder, int position) {
+        holder.bind(mField.getAllFields().get(position));
+    }
+
+    @Override
+    public void onFieldChanged(Field field, int position) {
         field.markChanged();
         markChanged(mField);
         mChangeListener.onChanged();
-        notifyDataSetChanged();
+        // only the edited row shows a new value, the others keep their views
+        notifyItemChanged(position);
     }
 
-    private void markChanged(Field field) {
+    static void markChanged(Field field) {
         field.markChanged();
         if (field.isFreeObject()) {
-            for (Field subField : mField.getAllFields()) {
+            for (Field subField : field.asFreeObject().getAllFields()) {
                 markChanged(subField);
             }
         }
@@ -6,14 +6,16 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ListView;
 
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 import ru.mail.flexsettings.field.Field;
 
 public class FieldFragment extends Fragment {
     private Field mField;
     private FieldChangeListener mChangeListener;
+    private Field mFocusedField;
 
     public FieldFragment() {
     }
@@ -25,14 +27,25 @@ public class FieldFragment extends Fragment {
         mChangeListener = changeListener;
     }
 
+    @SuppressLint("ValidFragment")
+    public FieldFragment(Field field, FieldChangeListener changeListener, Field focusedField) {
+        this(field, changeListener);
+        mFocusedField = focusedField;
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment, container, false);
-        ListView list = view.findViewById(R.id.free_type_fragment);
+        RecyclerView list = view.findViewById(R.id.free_type_fragment);
+        list.setLayoutManager(new LinearLayoutManager(getContext()));
+        list.setHasFixedSize(true);
 
         if (mField.isObject()) {
             FieldAdapter adapter = new FieldAdapter((FlexSettingsActivity) getActivity(), mField.asObject(), mChangeListener);
             list.setAdapter(adapter);
+            if (mFocusedField != null) {
+                list.scrollToPosition(Math.max(mField.asObject().getAllFields().indexOf(mFocusedField), 0));
+            }
         }
 
         return view;
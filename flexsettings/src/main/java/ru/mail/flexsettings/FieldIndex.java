@@ -0,0 +1,209 @@
+package ru.mail.flexsettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import ru.mail.flexsettings.field.Field;
+import ru.mail.flexsettings.field.ObjectField;
+
+// Dotted paths and descriptions of every field of the tree. build() walks the tree and sorts the names for
+// prefix queries, it is meant to run in the background and holds the index only while it adds the fields of
+// one object. Queries made before it is done see the fields indexed so far. Fields added to the objects of
+// the tree later are indexed as they come.
+public class FieldIndex implements ObjectField.OnFieldAddedListener {
+    private static final Comparator<Entry> BY_NAME = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry first, Entry second) {
+            return first.mSearchName.compareTo(second.mSearchName);
+        }
+    };
+
+    private final ObjectField mRoot;
+    private final List<Entry> mEntries = new ArrayList<Entry>();
+    private final Set<Field> mIndexed = Collections.newSetFromMap(new IdentityHashMap<Field, Boolean>());
+    private final Map<ObjectField, Entry> mObjectEntries = new IdentityHashMap<ObjectField, Entry>();
+    private List<Entry> mByName;
+    private String mLastQuery;
+    private List<Entry> mLastMatches;
+
+    public FieldIndex(ObjectField root) {
+        mRoot = root;
+    }
+
+    public void build() {
+        addFields(mRoot, null);
+
+        List<Entry> byName;
+        synchronized (this) {
+            if (mByName != null) {
+                return;
+            }
+            byName = new ArrayList<Entry>(mEntries);
+        }
+        Collections.sort(byName, BY_NAME);
+        synchronized (this) {
+            if (mByName != null) {
+                return;
+            }
+            // fields added while the names were sorted
+            for (int i = byName.size(); i < mEntries.size(); i++) {
+                insertByName(byName, mEntries.get(i));
+            }
+            mByName = byName;
+        }
+    }
+
+    // fields whose name starts with the query, then the ones whose path or description contains it
+    public synchronized List<Entry> search(String query, int limit) {
+        String text = query.trim().toLowerCase(Locale.ROOT);
+        List<Entry> results = new ArrayList<Entry>();
+        if (text.isEmpty()) {
+            return results;
+        }
+
+        if (mByName != null) {
+            int index = Collections.binarySearch(mByName, new Entry(text), BY_NAME);
+            for (int i = index < 0 ? -index - 1 : index; i < mByName.size() && results.size() < limit; i++) {
+                Entry entry = mByName.get(i);
+                if (!entry.mSearchName.startsWith(text)) {
+                    break;
+                }
+                results.add(entry);
+            }
+        } else {
+            // not built yet, the names are matched in the order of the tree
+            for (Entry entry : mEntries) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                if (entry.mSearchName.startsWith(text)) {
+                    results.add(entry);
+                }
+            }
+        }
+
+        // a query typed on top of the previous one only narrows its matches
+        List<Entry> candidates = mLastQuery != null && text.startsWith(mLastQuery) ? mLastMatches : mEntries;
+        List<Entry> matches = new ArrayList<Entry>();
+        for (Entry entry : candidates) {
+            if (entry.mSearchText.contains(text)) {
+                matches.add(entry);
+            }
+        }
+        mLastQuery = text;
+        mLastMatches = matches;
+
+        for (Entry entry : matches) {
+            if (results.size() >= limit) {
+                break;
+            }
+            if (!entry.mSearchName.startsWith(text)) {
+                results.add(entry);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void onFieldAdded(ObjectField object, Field field) {
+        Entry entry;
+        synchronized (this) {
+            entry = addField(object, mObjectEntries.get(object), field);
+        }
+        if (entry != null && field.isObject()) {
+            addFields(field.asObject(), entry);
+        }
+    }
+
+    // the listener is added before the fields are read, a field added in between is reported by both and
+    // indexed once
+    private void addFields(ObjectField object, Entry objectEntry) {
+        List<Entry> objectEntries = new ArrayList<Entry>();
+        synchronized (this) {
+            if (mObjectEntries.containsKey(object)) {
+                return;
+            }
+            mObjectEntries.put(object, objectEntry);
+            object.addOnFieldAddedListener(this);
+            for (Field field : object.getAllFields()) {
+                Entry entry = addField(object, objectEntry, field);
+                if (entry != null && field.isObject()) {
+                    objectEntries.add(entry);
+                }
+            }
+        }
+        for (Entry entry : objectEntries) {
+            addFields(entry.mField.asObject(), entry);
+        }
+    }
+
+    private Entry addField(ObjectField owner, Entry ownerEntry, Field field) {
+        if (!mIndexed.add(field)) {
+            return null;
+        }
+        Entry entry = new Entry(field, owner, ownerEntry);
+        mEntries.add(entry);
+        if (mByName != null) {
+            insertByName(mByName, entry);
+        }
+        mLastQuery = null;
+        mLastMatches = null;
+        return entry;
+    }
+
+    private static void insertByName(List<Entry> byName, Entry entry) {
+        int index = Collections.binarySearch(byName, entry, BY_NAME);
+        byName.add(index < 0 ? -index - 1 : index, entry);
+    }
+
+    public static class Entry {
+        private final Field mField;
+        private final ObjectField mOwner;
+        private final Entry mOwnerEntry;
+        private final String mPath;
+        private final String mSearchName;
+        private final String mSearchText;
+
+        private Entry(Field field, ObjectField owner, Entry ownerEntry) {
+            mField = field;
+            mOwner = owner;
+            mOwnerEntry = ownerEntry;
+            mPath = ownerEntry == null ? field.getName() : ownerEntry.mPath + "." + field.getName();
+            mSearchName = field.getName().toLowerCase(Locale.ROOT);
+            mSearchText = (mPath + "\n" + field.getDescription()).toLowerCase(Locale.ROOT);
+        }
+
+        private Entry(String searchName) {
+            mField = null;
+            mOwner = null;
+            mOwnerEntry = null;
+            mPath = null;
+            mSearchName = searchName;
+            mSearchText = null;
+        }
+
+        public Field getField() {
+            return mField;
+        }
+
+        // object the field belongs to, the one whose screen shows it
+        public ObjectField getOwner() {
+            return mOwner;
+        }
+
+        // entry of the owner, null for fields of the root
+        public Entry getOwnerEntry() {
+            return mOwnerEntry;
+        }
+
+        public String getPath() {
+            return mPath;
+        }
+    }
+}
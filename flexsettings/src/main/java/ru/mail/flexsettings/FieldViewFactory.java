@@ -7,131 +7,179 @@ import android.view.ViewGroup;
 import android.widget.CheckBox;
 import android.widget.TextView;
 
-import ru.mail.flexsettings.field.BooleanField;
 import ru.mail.flexsettings.field.Field;
-import ru.mail.flexsettings.field.IntegerField;
-import ru.mail.flexsettings.field.LongField;
-import ru.mail.flexsettings.field.ObjectField;
-import ru.mail.flexsettings.field.StringField;
 
 class FieldViewFactory {
+    static final int TYPE_BOOLEAN = 0;
+    static final int TYPE_STRING = 1;
+    static final int TYPE_INTEGER = 2;
+    static final int TYPE_LONG = 3;
+    static final int TYPE_OBJECT = 4;
+    static final int TYPE_UNSUPPORTED = 5;
+
     private final LayoutInflater mLayoutInflater;
     private final Navigator mNavigator;
+    private final FieldChangedListener mChangedListener;
 
-    FieldViewFactory(LayoutInflater layoutInflater, Navigator navigator) {
+    FieldViewFactory(LayoutInflater layoutInflater, Navigator navigator, FieldChangedListener changedListener) {
         mLayoutInflater = layoutInflater;
         mNavigator = navigator;
+        mChangedListener = changedListener;
     }
 
-    public FieldViewHolder createView(final Field field, ViewGroup parent, final FieldChangeListener changeListener) {
+    public int getViewType(Field field) {
         if (field.isBoolean()) {
-            return createBooleanView(field.asBoolean(), parent, changeListener);
+            return TYPE_BOOLEAN;
         } else if (field.isString()) {
-            return createStringView(field.asString(), parent, changeListener);
+            return TYPE_STRING;
         } else if (field.isInteger()) {
-            return createIntegerView(field.asInteger(), parent, changeListener);
+            return TYPE_INTEGER;
         } else if (field.isLong()) {
-            return createLongView(field.asLong(), parent, changeListener);
+            return TYPE_LONG;
         } else if (field.isObject()) {
-            return createObjectView(field.asObject(), parent, changeListener);
+            return TYPE_OBJECT;
         } else {
-            return createUndefinedView(parent);
+            return TYPE_UNSUPPORTED;
         }
     }
 
-    private FieldViewHolder createBooleanView(final BooleanField booleanField, ViewGroup parent, final FieldChangeListener changeListener) {
-        View view = mLayoutInflater.inflate(R.layout.item_boolean, parent, false);
+    public FieldViewHolder createViewHolder(ViewGroup parent, int viewType) {
+        switch (viewType) {
+            case TYPE_BOOLEAN:
+                return createBooleanView(parent);
+            case TYPE_STRING:
+                return createStringView(parent);
+            case TYPE_INTEGER:
+                return createIntegerView(parent);
+            case TYPE_LONG:
+                return createLongView(parent);
+            case TYPE_OBJECT:
+                return createObjectView(parent);
+            default:
+                return createUnsupportedView(parent);
+        }
+    }
 
+    private FieldViewHolder createBooleanView(ViewGroup parent) {
+        View view = mLayoutInflater.inflate(R.layout.item_boolean, parent, false);
         final CheckBox valueCheckBox = view.findViewById(R.id.checkbox);
-        valueCheckBox.setChecked(booleanField.getValue());
+        return new FieldViewHolder(view) {
+            @Override
+            protected void bindValue(Field field) {
+                valueCheckBox.setChecked(field.asBoolean().getValue());
+            }
 
-        return new FieldViewHolder(view, new View.OnClickListener() {
             @Override
-            public void onClick(View v) {
+            protected void onClick(Field field, int position) {
                 valueCheckBox.toggle();
-                booleanField.setValue(valueCheckBox.isChecked());
-                changeListener.onChanged();
+                field.asBoolean().setValue(valueCheckBox.isChecked());
+                mChangedListener.onFieldChanged(field, position);
             }
-        });
+        };
     }
 
-    private FieldViewHolder createStringView(final StringField stringField, ViewGroup parent, final FieldChangeListener changeListener) {
+    private FieldViewHolder createStringView(ViewGroup parent) {
         View view = mLayoutInflater.inflate(R.layout.item_string, parent, false);
-        view.<TextView>findViewById(R.id.value).setText(stringField.getValue());
-        return new FieldViewHolder(view, new View.OnClickListener() {
+        final TextView valueView = view.findViewById(R.id.value);
+        return new FieldViewHolder(view) {
+            @Override
+            protected void bindValue(Field field) {
+                valueView.setText(field.asString().getValue());
+            }
+
             @Override
-            public void onClick(View v) {
-                mNavigator.editPrimitiveField(stringField.getName(), stringField.getValue(), false, new Navigator.EditListener<String>() {
+            protected void onClick(final Field field, final int position) {
+                mNavigator.editPrimitiveField(field.getName(), field.asString().getValue(), false, new Navigator.EditListener<String>() {
                     @Override
                     public void onChanged(String value) {
-                        stringField.setValue(value);
-                        changeListener.onChanged();
+                        field.asString().setValue(value);
+                        mChangedListener.onFieldChanged(field, position);
                     }
                 });
             }
-        });
+        };
     }
 
-    private FieldViewHolder createIntegerView(final IntegerField field, ViewGroup parent, final FieldChangeListener changeListener) {
+    private FieldViewHolder createIntegerView(ViewGroup parent) {
         View view = mLayoutInflater.inflate(R.layout.item_number, parent, false);
-        final String value = field.getValue().toString();
-        view.<TextView>findViewById(R.id.value).setText(value);
-        return new FieldViewHolder(view, new View.OnClickListener() {
+        final TextView valueView = view.findViewById(R.id.value);
+        return new FieldViewHolder(view) {
+            @Override
+            protected void bindValue(Field field) {
+                valueView.setText(String.valueOf(field.asInteger().getValue()));
+            }
+
             @Override
-            public void onClick(View v) {
-                mNavigator.editPrimitiveField(field.getName(), value, true, new Navigator.EditListener<String>() {
+            protected void onClick(final Field field, final int position) {
+                mNavigator.editPrimitiveField(field.getName(), String.valueOf(field.asInteger().getValue()), true, new Navigator.EditListener<String>() {
                     @Override
                     public void onChanged(String value) {
-                        field.setValue(Integer.parseInt(value));
-                        changeListener.onChanged();
+                        field.asInteger().setValue(Integer.parseInt(value));
+                        mChangedListener.onFieldChanged(field, position);
                     }
                 });
             }
-        });
+        };
     }
 
-    private FieldViewHolder createLongView(final LongField field, ViewGroup parent, final FieldChangeListener changeListener) {
+    private FieldViewHolder createLongView(ViewGroup parent) {
         View view = mLayoutInflater.inflate(R.layout.item_number, parent, false);
-        final String value = field.getValue().toString();
-        view.<TextView>findViewById(R.id.value).setText(value);
-        return new FieldViewHolder(view, new View.OnClickListener() {
+        final TextView valueView = view.findViewById(R.id.value);
+        return new FieldViewHolder(view) {
+            @Override
+            protected void bindValue(Field field) {
+                valueView.setText(String.valueOf(field.asLong().getValue()));
+            }
+
             @Override
-            public void onClick(View v) {
-                mNavigator.editPrimitiveField(field.getName(), value, true, new Navigator.EditListener<String>() {
+            protected void onClick(final Field field, final int position) {
+                mNavigator.editPrimitiveField(field.getName(), String.valueOf(field.asLong().getValue()), true, new Navigator.EditListener<String>() {
                     @Override
                     public void onChanged(String value) {
                         field.asLong().setValue(Long.parseLong(value));
-                        changeListener.onChanged();
+                        mChangedListener.onFieldChanged(field, position);
                     }
                 });
             }
-        });
+        };
     }
 
-    private FieldViewHolder createObjectView(final ObjectField field, ViewGroup parent, final FieldChangeListener changeListener) {
+    private FieldViewHolder createObjectView(ViewGroup parent) {
         View view = mLayoutInflater.inflate(R.layout.item_object, parent, false);
         view.<TextView>findViewById(R.id.value).setText("➡️");
-        return new FieldViewHolder(view, new View.OnClickListener() {
+        return new FieldViewHolder(view) {
+            @Override
+            protected void bindValue(Field field) {
+            }
+
             @Override
-            public void onClick(View v) {
+            protected void onClick(final Field field, final int position) {
                 mNavigator.showObjectField(field.asObject(), new FieldChangeListener() {
                     @Override
                     public void onChanged() {
-                        changeListener.onChanged();
+                        mChangedListener.onFieldChanged(field, position);
                     }
                 });
             }
-        });
+        };
     }
 
-    private FieldViewHolder createUndefinedView(ViewGroup parent) {
+    private FieldViewHolder createUnsupportedView(ViewGroup parent) {
         View view = mLayoutInflater.inflate(R.layout.item_object, parent, false);
         view.<TextView>findViewById(R.id.value).setText("❌");
-        return new FieldViewHolder(view, Color.LTGRAY, new View.OnClickListener() {
+        return new FieldViewHolder(view, Color.LTGRAY) {
+            @Override
+            protected void bindValue(Field field) {
+            }
+
             @Override
-            public void onClick(View v) {
+            protected void onClick(Field field, int position) {
                 mNavigator.showUnsupported();
             }
-        });
+        };
+    }
+
+    interface FieldChangedListener {
+        void onFieldChanged(Field field, int position);
     }
 }
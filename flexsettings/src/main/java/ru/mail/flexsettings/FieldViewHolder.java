@@ -2,36 +2,42 @@ package ru.mail.flexsettings;
 
 import android.graphics.Color;
 import android.view.View;
+import android.widget.TextView;
+
 import androidx.annotation.ColorInt;
+import androidx.recyclerview.widget.RecyclerView;
+import ru.mail.flexsettings.field.Field;
 
-class FieldViewHolder {
-    private final View mView;
-    private final View.OnClickListener mListener;
-    @ColorInt
-    private final int mColor;
+abstract class FieldViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    private final TextView mKeyView;
+    private Field mField;
 
-    public FieldViewHolder(View view, int color, View.OnClickListener listener) {
-        mView = view;
-        mListener = listener;
-        mColor = color;
+    FieldViewHolder(View view, @ColorInt int color) {
+        super(view);
+        mKeyView = view.findViewById(R.id.key);
+        view.setBackgroundColor(color);
+        view.setOnClickListener(this);
     }
 
-    public FieldViewHolder(View view, View.OnClickListener listener) {
-        mView = view;
-        mListener = listener;
-        mColor = Color.WHITE;
+    FieldViewHolder(View view) {
+        this(view, Color.WHITE);
     }
 
-    public View getView() {
-        return mView;
+    public void bind(Field field) {
+        mField = field;
+        mKeyView.setText(field.getName());
+        bindValue(field);
     }
 
-    public View.OnClickListener getListener() {
-        return mListener;
+    @Override
+    public void onClick(View v) {
+        int position = getAdapterPosition();
+        if (mField != null && position != RecyclerView.NO_POSITION) {
+            onClick(mField, position);
+        }
     }
 
-    @ColorInt
-    public int getColor() {
-        return mColor;
-    }
+    protected abstract void bindValue(Field field);
+
+    protected abstract void onClick(Field field, int position);
 }
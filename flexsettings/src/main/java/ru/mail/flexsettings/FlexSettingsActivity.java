@@ -1,20 +1,53 @@
 package ru.mail.flexsettings;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.EditText;
+
 import androidx.appcompat.app.AppCompatActivity;
 
 import androidx.fragment.app.Fragment;
-import org.json.JSONException;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import ru.mail.flexsettings.field.Field;
 
-public abstract class FlexSettingsActivity extends AppCompatActivity {
+public abstract class FlexSettingsActivity extends AppCompatActivity implements SearchResultAdapter.ResultListener {
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private Field mBaseField;
+    private FieldIndex mFieldIndex;
+    private EditText mSearchView;
+    private RecyclerView mSearchResultsView;
+    private SearchResultAdapter mSearchResultAdapter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_flex_settings);
+
+        mSearchResultAdapter = new SearchResultAdapter(getLayoutInflater(), this);
+        mSearchResultsView = findViewById(R.id.search_results);
+        mSearchResultsView.setLayoutManager(new LinearLayoutManager(this));
+        mSearchResultsView.setAdapter(mSearchResultAdapter);
+        mSearchView = findViewById(R.id.search);
+        mSearchView.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                search(s.toString());
+            }
+        });
     }
 
     protected void showFieldScreen(Field baseField) {
@@ -25,6 +58,40 @@ public abstract class FlexSettingsActivity extends AppCompatActivity {
 
             }
         }));
+
+        if (baseField.isObject()) {
+            final FieldIndex fieldIndex = new FieldIndex(baseField.asObject());
+            mFieldIndex = fieldIndex;
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    fieldIndex.build();
+                }
+            });
+        }
+    }
+
+    private void search(String query) {
+        if (mFieldIndex == null || query.trim().isEmpty()) {
+            mSearchResultsView.setVisibility(View.GONE);
+            return;
+        }
+        mSearchResultAdapter.setResults(mFieldIndex.search(query, MAX_SEARCH_RESULTS));
+        mSearchResultsView.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void onResultSelected(final FieldIndex.Entry entry) {
+        mSearchView.setText("");
+        new Navigator(this).showObjectField(entry.getOwner(), new FieldChangeListener() {
+            @Override
+            public void onChanged() {
+                // the screens of the objects in between are skipped, their fields are marked here
+                for (FieldIndex.Entry owner = entry.getOwnerEntry(); owner != null; owner = owner.getOwnerEntry()) {
+                    FieldAdapter.markChanged(owner.getField());
+                }
+            }
+        }, entry.getField());
     }
 
     public void setFragment(Fragment fragment) {
@@ -37,18 +104,20 @@ public abstract class FlexSettingsActivity extends AppCompatActivity {
 
     @Override
     public void onBackPressed() {
+        if (mSearchResultsView.getVisibility() == View.VISIBLE) {
+            mSearchView.setText("");
+            return;
+        }
         int backStackEntryCount = getSupportFragmentManager().getBackStackEntryCount();
 
         if (backStackEntryCount == 1) {
-            try {
-                onSaveSettings(new SettingToJsonMapper().map(mBaseField.asStrictObject()));
-            } catch (JSONException e) {
-                finish();
-            }
+            onSaveSettings(new ChangedSettingsWriter(mBaseField.asStrictObject()));
         } else {
             super.onBackPressed();
         }
     }
 
-    public abstract void onSaveSettings(String settingsJson);
+    // the writer holds a copy of the changed settings taken here, the subclass writes it off the main thread
+    // and finishes the activity once it is written
+    public abstract void onSaveSettings(ChangedSettingsWriter settings);
 }
@@ -6,6 +6,7 @@ import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
+import ru.mail.flexsettings.field.Field;
 import ru.mail.flexsettings.field.ObjectField;
 
 public class Navigator {
@@ -47,6 +48,10 @@ public class Navigator {
         mMainActivity.setFragment(new FieldFragment(objectField, changeListener));
     }
 
+    public void showObjectField(ObjectField objectField, FieldChangeListener changeListener, Field focusedField) {
+        mMainActivity.setFragment(new FieldFragment(objectField, changeListener, focusedField));
+    }
+
     public void showUnsupported() {
         Toast.makeText(
                 mMainActivity.getApplicationContext(),
@@ -0,0 +1,74 @@
+package ru.mail.flexsettings;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.ResultViewHolder> {
+    private final LayoutInflater mLayoutInflater;
+    private final ResultListener mListener;
+    private List<FieldIndex.Entry> mResults = new ArrayList<FieldIndex.Entry>();
+
+    SearchResultAdapter(LayoutInflater layoutInflater, ResultListener listener) {
+        mLayoutInflater = layoutInflater;
+        mListener = listener;
+    }
+
+    public void setResults(List<FieldIndex.Entry> results) {
+        mResults = results;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mResults.size();
+    }
+
+    @NonNull
+    @Override
+    public ResultViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new ResultViewHolder(mLayoutInflater.inflate(R.layout.item_search_result, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ResultViewHolder holder, int position) {
+        holder.bind(mResults.get(position));
+    }
+
+    class ResultViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        private final TextView mPathView;
+        private final TextView mDescriptionView;
+        private FieldIndex.Entry mEntry;
+
+        ResultViewHolder(View view) {
+            super(view);
+            mPathView = view.findViewById(R.id.key);
+            mDescriptionView = view.findViewById(R.id.value);
+            view.setOnClickListener(this);
+        }
+
+        void bind(FieldIndex.Entry entry) {
+            mEntry = entry;
+            mPathView.setText(entry.getPath());
+            mDescriptionView.setText(entry.getField().getDescription());
+        }
+
+        @Override
+        public void onClick(View v) {
+            if (mEntry != null) {
+                mListener.onResultSelected(mEntry);
+            }
+        }
+    }
+
+    interface ResultListener {
+        void onResultSelected(FieldIndex.Entry entry);
+    }
+}
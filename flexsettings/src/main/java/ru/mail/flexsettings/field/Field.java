@@ -2,6 +2,8 @@ package ru.mail.flexsettings.field;
 
 public abstract class Field implements Comparable<Field> {
     private final String mName;
+    private String mDescription = "";
+    private boolean mIsRequired;
     private boolean mIsChanged;
 
     public Field(String name) {
@@ -12,6 +14,24 @@ public abstract class Field implements Comparable<Field> {
         return mName;
     }
 
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public Field withDescription(String description) {
+        mDescription = description;
+        return this;
+    }
+
+    public boolean isRequired() {
+        return mIsRequired;
+    }
+
+    public Field required() {
+        mIsRequired = true;
+        return this;
+    }
+
     public boolean isChanged() {
         return mIsChanged;
     }
@@ -104,6 +124,10 @@ public abstract class Field implements Comparable<Field> {
         return (FreeObjectField) this;
     }
 
+    public boolean isPrimitive() {
+        return this instanceof PrimitiveField;
+    }
+
     public PrimitiveField<?> asPrimitive() {
         return (PrimitiveField<?>) this;
     }
@@ -1,12 +1,13 @@
 package ru.mail.flexsettings.field;
 
-import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class FreeObjectField extends ObjectField {
     private final Field mBaseField;
 
     public FreeObjectField(String name, Field baseField) {
-        super(name, new ArrayList<Field>());
+        // fields are added on the main thread while the search index may read them in the background
+        super(name, new CopyOnWriteArrayList<Field>());
         mBaseField = baseField;
     }
 
@@ -16,7 +17,7 @@ public class FreeObjectField extends ObjectField {
 
     public Field addField(String name) {
         Field copy = mBaseField.copy(name);
-        getAllFields().add(copy);
+        addField(copy);
         return copy;
     }
 
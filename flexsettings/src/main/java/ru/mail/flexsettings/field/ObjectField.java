@@ -1,27 +1,83 @@
 package ru.mail.flexsettings.field;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class ObjectField extends Field {
     private final List<Field> mFields;
+    private final List<Field> mFieldsView;
+    private final Map<String, Field> mFieldsByName;
+    private final List<OnFieldAddedListener> mOnFieldAddedListeners = new CopyOnWriteArrayList<OnFieldAddedListener>();
 
     protected ObjectField(String name, List<Field> fields) {
         super(name);
         Collections.sort(fields);
         mFields = fields;
+        mFieldsView = Collections.unmodifiableList(fields);
+        mFieldsByName = new HashMap<String, Field>(fields.size() * 4 / 3 + 1);
+        for (Field field : fields) {
+            index(field);
+        }
     }
 
     public List<Field> getAllFields() {
-        return mFields;
+        return mFieldsView;
     }
 
     public Field getField(String name) {
-        for (Field field : mFields) {
-            if (field.getName().equals(name)) {
+        Field field = mFieldsByName.get(name);
+        if (field == null) {
+            throw new IllegalStateException("field '" + name + "' absent in field " + getName());
+        }
+        return field;
+    }
+
+    // dotted path of names relative to this object, e.g. "feature.nestedConfig.nestedField1"
+    public Field resolve(String path) {
+        ObjectField object = this;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf('.', start);
+            Field field = object.getField(end < 0 ? path.substring(start) : path.substring(start, end));
+            if (end < 0) {
                 return field;
             }
+            if (!field.isObject()) {
+                throw new IllegalStateException("field '" + field.getName() + "' of path '" + path + "' is not an object");
+            }
+            object = field.asObject();
+            start = end + 1;
         }
-        throw new IllegalStateException("field '" + name + "' absent in field " + getName());
+    }
+
+    // listeners may be added from any thread, they are called on the thread adding the field
+    public void addOnFieldAddedListener(OnFieldAddedListener listener) {
+        mOnFieldAddedListeners.add(listener);
+    }
+
+    public void removeOnFieldAddedListener(OnFieldAddedListener listener) {
+        mOnFieldAddedListeners.remove(listener);
+    }
+
+    protected void addField(Field field) {
+        mFields.add(field);
+        index(field);
+        for (OnFieldAddedListener listener : mOnFieldAddedListeners) {
+            listener.onFieldAdded(this, field);
+        }
+    }
+
+    private void index(Field field) {
+        // getField returns the first of fields sharing a name
+        if (!mFieldsByName.containsKey(field.getName())) {
+            mFieldsByName.put(field.getName(), field);
+        }
+    }
+
+    public interface OnFieldAddedListener {
+        void onFieldAdded(ObjectField object, Field field);
     }
 }
@@ -1,13 +1,19 @@
 package ru.mail.flexsettings.field;
 
 public abstract class PrimitiveField<T> extends Field {
+    private final T mDefaultValue;
     private T mValue;
 
     public PrimitiveField(String name, T defaultValue) {
         super(name);
+        mDefaultValue = defaultValue;
         mValue = defaultValue;
     }
 
+    public T getDefaultValue() {
+        return mDefaultValue;
+    }
+
     public T getValue() {
         return mValue;
     }
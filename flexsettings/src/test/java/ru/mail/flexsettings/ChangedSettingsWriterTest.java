@@ -0,0 +1,135 @@
+package ru.mail.flexsettings;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import ru.mail.flexsettings.field.Field;
+import ru.mail.flexsettings.field.StrictObjectField;
+
+import static org.junit.Assert.assertEquals;
+
+// android.util.JsonWriter is not in the stub android.jar, the tests run against the Robolectric one
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ChangedSettingsWriterTest {
+
+    @Test
+    public void writesEmptyObjectWhenNothingChanged() throws IOException {
+        StrictObjectField root = Field.strictObject("root", Field.string("field"), Field.integer("count"));
+
+        assertEquals("{}", write(root));
+    }
+
+    @Test
+    public void writesOnlyChangedFields() throws IOException {
+        StrictObjectField root = Field.strictObject("root",
+                Field.string("field"), Field.integer("count"), Field.bool("flag"), Field.longField("size"));
+        root.getField("field").asString().setValue("value");
+        root.getField("field").markChanged();
+        root.getField("flag").asBoolean().setValue(true);
+        root.getField("flag").markChanged();
+        root.getField("size").asLong().setValue(5L);
+
+        assertEquals("{\"field\":\"value\",\"flag\":true}", write(root));
+    }
+
+    @Test
+    public void writesRequiredFieldsOfWrittenObjects() throws IOException {
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature", Field.integer("id").required(), Field.bool("flag")),
+                Field.strictObject("other", Field.integer("id").required()),
+                Field.string("name").required());
+        root.resolve("feature.id").asInteger().setValue(7);
+        root.resolve("feature.flag").asBoolean().setValue(true);
+        root.resolve("feature.flag").markChanged();
+        root.resolve("other.id").asInteger().setValue(3);
+        root.resolve("name").asString().setValue("name");
+
+        assertEquals("{\"feature\":{\"flag\":true,\"id\":7},\"name\":\"name\"}", write(root));
+    }
+
+    @Test
+    public void writesObjectsLeadingToChangedFields() throws IOException {
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature",
+                        Field.strictObject("nestedConfig", Field.integer("nestedField"), Field.string("other")),
+                        Field.string("field")));
+        root.resolve("feature.nestedConfig.nestedField").asInteger().setValue(19);
+        root.resolve("feature.nestedConfig.nestedField").markChanged();
+
+        assertEquals("{\"feature\":{\"nestedConfig\":{\"nestedField\":19}}}", write(root));
+    }
+
+    @Test
+    public void writesChangedObjectWithoutChangedFields() throws IOException {
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature", Field.string("field"), Field.integer("id").required()));
+        root.getField("feature").markChanged();
+
+        assertEquals("{\"feature\":{\"id\":0}}", write(root));
+    }
+
+    @Test
+    public void skipsChangedNullField() throws IOException {
+        StrictObjectField root = Field.strictObject("root", Field.string("field"), Field.integer("count"));
+        root.getField("field").asString().setValue(null);
+        root.getField("field").markChanged();
+        root.getField("count").asInteger().setValue(1);
+        root.getField("count").markChanged();
+
+        assertEquals("{\"count\":1}", write(root));
+    }
+
+    @Test
+    public void writesDefaultOfRequiredNullField() throws IOException {
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature", Field.string("name").required(), Field.integer("id").required(),
+                        Field.bool("flag")));
+        root.resolve("feature.name").asString().setValue(null);
+        root.resolve("feature.id").asInteger().setValue(null);
+        root.resolve("feature.flag").asBoolean().setValue(false);
+        root.resolve("feature.flag").markChanged();
+
+        assertEquals("{\"feature\":{\"flag\":false,\"id\":0,\"name\":\"\"}}", write(root));
+    }
+
+    @Test
+    public void skipsFieldsWithoutValue() throws IOException {
+        StrictObjectField root = Field.strictObject("root", Field.empty("empty").required(), Field.string("field"));
+        root.getField("empty").markChanged();
+        root.getField("field").asString().setValue("value");
+        root.getField("field").markChanged();
+
+        assertEquals("{\"field\":\"value\"}", write(root));
+    }
+
+    @Test
+    public void writesSettingsAsTheyWereWhenCreated() throws IOException {
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature", Field.integer("id"), Field.string("field")));
+        root.resolve("feature.id").asInteger().setValue(1);
+        root.resolve("feature.id").markChanged();
+        ChangedSettingsWriter writer = new ChangedSettingsWriter(root);
+
+        root.resolve("feature.id").asInteger().setValue(2);
+        root.resolve("feature.field").asString().setValue("value");
+        root.resolve("feature.field").markChanged();
+
+        assertEquals("{\"feature\":{\"id\":1}}", write(writer));
+    }
+
+    private static String write(StrictObjectField root) throws IOException {
+        return write(new ChangedSettingsWriter(root));
+    }
+
+    private static String write(ChangedSettingsWriter writer) throws IOException {
+        StringWriter out = new StringWriter();
+        writer.writeTo(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,146 @@
+package ru.mail.flexsettings;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import ru.mail.flexsettings.field.Field;
+import ru.mail.flexsettings.field.FreeObjectField;
+import ru.mail.flexsettings.field.ObjectField;
+import ru.mail.flexsettings.field.StrictObjectField;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FieldIndexTest {
+    private static final int NO_LIMIT = 100;
+
+    private final FreeObjectField mValues = Field.freeObject("values", Field.string("value"));
+    private final StrictObjectField mRoot = Field.strictObject("root",
+            Field.strictObject("feature",
+                    Field.string("fieldOne").withDescription("First field"),
+                    Field.integer("fieldTwo").withDescription("Timeout of the request"),
+                    Field.strictObject("nestedConfig",
+                            Field.bool("nestedField"))),
+            Field.bool("featureFlag"),
+            Field.string("other").withDescription("Mentions a feature"),
+            mValues);
+
+    @Test
+    public void findsPrefixMatchesSortedByName() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+
+        assertEquals(Arrays.asList("feature.fieldOne", "feature.fieldTwo", "feature.nestedConfig.nestedField"),
+                paths(index.search("field", NO_LIMIT)));
+        assertEquals(Arrays.asList("feature.nestedConfig", "feature.nestedConfig.nestedField"),
+                paths(index.search("nested", NO_LIMIT)));
+    }
+
+    @Test
+    public void findsPrefixMatchesBeforePathAndDescriptionMatches() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+
+        List<String> paths = paths(index.search("Feature", NO_LIMIT));
+
+        assertEquals(Arrays.asList("feature", "featureFlag"), paths.subList(0, 2));
+        assertEquals(new HashSet<String>(Arrays.asList("feature.fieldOne", "feature.fieldTwo", "feature.nestedConfig",
+                "feature.nestedConfig.nestedField", "other")), new HashSet<String>(paths.subList(2, paths.size())));
+    }
+
+    @Test
+    public void findsDescriptionMatches() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+
+        assertEquals(Collections.singletonList("feature.fieldTwo"), paths(index.search("TIMEOUT", NO_LIMIT)));
+        assertEquals(Collections.singletonList("feature.fieldTwo"), paths(index.search("of the req", NO_LIMIT)));
+        assertEquals(Collections.singletonList("other"), paths(index.search("mentions", NO_LIMIT)));
+    }
+
+    @Test
+    public void narrowsPreviousQuery() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+
+        index.search("time", NO_LIMIT);
+
+        assertEquals(Collections.singletonList("feature.fieldTwo"), paths(index.search("timeout", NO_LIMIT)));
+        assertEquals(Collections.singletonList("other"), paths(index.search("mentions", NO_LIMIT)));
+    }
+
+    @Test
+    public void stopsAtLimit() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+
+        assertEquals(Collections.singletonList("feature"), paths(index.search("feature", 1)));
+        assertEquals(3, index.search("feature", 3).size());
+        assertEquals(0, index.search("feature", 0).size());
+    }
+
+    @Test
+    public void findsNothingBeforeBuild() {
+        FieldIndex index = new FieldIndex(mRoot);
+
+        assertTrue(index.search("feature", NO_LIMIT).isEmpty());
+    }
+
+    @Test
+    public void buildsOnce() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+        index.build();
+
+        assertEquals(Collections.singletonList("feature.fieldTwo"), paths(index.search("timeout", NO_LIMIT)));
+    }
+
+    @Test
+    public void ignoresBlankQuery() {
+        FieldIndex index = new FieldIndex(mRoot);
+
+        assertTrue(index.search("  ", NO_LIMIT).isEmpty());
+    }
+
+    @Test
+    public void indexesFieldsAddedLater() {
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+        index.search("extra", NO_LIMIT);
+
+        mValues.addField("extraValue");
+
+        assertEquals(Collections.singletonList("values.extraValue"), paths(index.search("extra", NO_LIMIT)));
+    }
+
+    @Test
+    public void keepsOtherListenersOfObjects() {
+        final List<String> added = new ArrayList<String>();
+        mValues.addOnFieldAddedListener(new ObjectField.OnFieldAddedListener() {
+            @Override
+            public void onFieldAdded(ObjectField object, Field field) {
+                added.add(field.getName());
+            }
+        });
+        FieldIndex index = new FieldIndex(mRoot);
+        index.build();
+
+        mValues.addField("extraValue");
+
+        assertEquals(Collections.singletonList("extraValue"), added);
+        assertEquals(Collections.singletonList("values.extraValue"), paths(index.search("extra", NO_LIMIT)));
+    }
+
+    private static List<String> paths(List<FieldIndex.Entry> entries) {
+        List<String> paths = new ArrayList<String>();
+        for (FieldIndex.Entry entry : entries) {
+            paths.add(entry.getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.mail.flexsettings.field;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+
+public class ObjectFieldTest {
+
+    @Test
+    public void resolvesFieldOfTheObject() {
+        Field field = Field.string("field");
+        StrictObjectField root = Field.strictObject("root", field, Field.bool("flag"));
+
+        assertSame(field, root.resolve("field"));
+    }
+
+    @Test
+    public void resolvesDottedPath() {
+        Field field = Field.integer("nestedField");
+        StrictObjectField nested = Field.strictObject("nestedConfig", field);
+        StrictObjectField feature = Field.strictObject("feature", nested, Field.string("field"));
+        StrictObjectField root = Field.strictObject("root", feature);
+
+        assertSame(field, root.resolve("feature.nestedConfig.nestedField"));
+        assertSame(nested, root.resolve("feature.nestedConfig"));
+        assertSame(field, feature.resolve("nestedConfig.nestedField"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsOnMissingSegment() {
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature", Field.strictObject("nestedConfig", Field.integer("nestedField"))));
+
+        root.resolve("feature.absent.nestedField");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsOnMissingLastSegment() {
+        StrictObjectField root = Field.strictObject("root", Field.strictObject("feature", Field.string("field")));
+
+        root.resolve("feature.absent");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsOnNonObjectIntermediate() {
+        StrictObjectField root = Field.strictObject("root", Field.strictObject("feature", Field.bool("flag")));
+
+        root.resolve("feature.flag.value");
+    }
+
+    @Test
+    public void resolvesFirstOfDuplicateNames() {
+        Field first = Field.string("field");
+        Field second = Field.integer("field");
+        StrictObjectField root = Field.strictObject("root", first, second);
+
+        assertSame(first, root.resolve("field"));
+        assertSame(first, root.getField("field"));
+    }
+
+    @Test
+    public void resolvesThroughFirstOfDuplicateObjects() {
+        Field field = Field.string("field");
+        StrictObjectField root = Field.strictObject("root",
+                Field.strictObject("feature", field),
+                Field.strictObject("feature", Field.string("field")));
+
+        assertSame(field, root.resolve("feature.field"));
+    }
+}